@@ -0,0 +1,100 @@
+package org.cei.planner.benchmark;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import javaff.JavaFF;
+import javaff.data.GroundProblem;
+import javaff.data.UngroundProblem;
+import javaff.parser.PDDL21parser;
+import javaff.planning.State;
+
+import org.cei.planner.data.BitState;
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.SearchContext;
+import org.cei.planner.data.StateValuePolicyEnum;
+
+/**
+ * Loads the problems and representative states the benchmarks run on.
+ * Problems are read from the directory named by the planner.problems system
+ * property, ./problems/ by default, one directory per domain.
+ * 
+ * The benchmarks are JMH benchmarks. Compile benchsrc against src, JavaFF
+ * and JMH with the JMH annotation processor on the path, then run
+ * org.openjdk.jmh.Main from the problems' parent directory.
+ */
+public final class BenchmarkProblems {
+
+	public static final String PROBLEMS_PATH = System.getProperty("planner.problems", "./problems/");
+	// Number of random steps from the initial state to the benchmarked state
+	public static final int STEPS = 10;
+
+	private static final String DOMAIN_FILE = "domain.pddl";
+	private static final String PROBLEM_FILE = "pfile01";
+	private static final long SEED = 42;
+
+	private BenchmarkProblems() {
+	}
+
+	/**
+	 * Parses and grounds the first problem of the domain
+	 * @param domain the name of the domain directory
+	 */
+	public static GroundProblem load(String domain) {
+		// Divert parser output to remove it from the benchmark output
+		JavaFF.parsingOutput = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		File domainFile = new File(PROBLEMS_PATH + domain + "/" + DOMAIN_FILE);
+		File problemFile = new File(PROBLEMS_PATH + domain + "/" + PROBLEM_FILE);
+		UngroundProblem unground = PDDL21parser.parseFiles(domainFile, problemFile);
+		return unground.ground();
+	}
+
+	/**
+	 * Creates a root node on the state reached by a seeded random walk from
+	 * the initial state. The walk stops early rather than enter a state
+	 * without applicable actions, so the same problem always yields the
+	 * same state.
+	 * @param compiled whether the node searches on compiled states
+	 */
+	public static MCTSNode createNode(GroundProblem problem, int steps, boolean compiled) {
+		CompiledProblem compiledProblem = new CompiledProblem(problem);
+		Random random = new Random(SEED);
+		State state = problem.getSTRIPSInitialState();
+		BitState bitState = compiledProblem.getInitialState();
+		int[] applicable = new int[compiledProblem.getNumActions()];
+		for (int i = 0; i < steps; i++) {
+			int count = compiledProblem.getApplicableActions(bitState, applicable);
+			if (count == 0) {
+				break;
+			}
+			int action = applicable[random.nextInt(count)];
+			BitState nextState = compiledProblem.apply(bitState, action);
+			if (!compiledProblem.hasApplicableAction(nextState)) {
+				break;
+			}
+			state = state.apply(compiledProblem.getAction(action));
+			bitState = nextState;
+		}
+		if (!compiled) {
+			return new MCTSNode(state, StateValuePolicyEnum.H_VALUE, new SearchContext());
+		}
+		return new MCTSNode(state, bitState, StateValuePolicyEnum.H_VALUE,
+				new SearchContext(null, compiledProblem));
+	}
+
+	/**
+	 * Creates an unexpanded root node on the same state, in the same
+	 * context, as the given node
+	 */
+	public static MCTSNode copyNode(MCTSNode node) {
+		return new MCTSNode(node.getState(), node.getBitState(), StateValuePolicyEnum.H_VALUE,
+				node.getContext());
+	}
+}
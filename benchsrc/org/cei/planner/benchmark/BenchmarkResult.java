@@ -0,0 +1,135 @@
+package org.cei.planner.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The measured runs of one planner configuration on one problem
+ */
+public class BenchmarkResult {
+
+	public static final String CSV_HEADER = "planner,domain,problem,runs,failures,"
+			+ "p50_ms,p95_ms,max_ms,rollouts_per_sec,peak_heap_mb,plan_length";
+
+	private String planner = null;
+	private String domain = null;
+	private String problem = null;
+	private List<Double> solveTimes = new ArrayList<>();
+	private double totalRolloutsPerSecond = 0.0;
+	private long peakHeap = 0;
+	private long totalPlanLength = 0;
+	private int failures = 0;
+
+	public BenchmarkResult(String planner, String domain, String problem) {
+		this.planner = planner;
+		this.domain = domain;
+		this.problem = problem;
+	}
+
+	/**
+	 * Records a run that found a plan
+	 * @param solveTime in milliseconds
+	 * @param rolloutsPerSecond
+	 * @param peakHeap in bytes
+	 * @param planLength
+	 */
+	public void addRun(double solveTime, double rolloutsPerSecond, long peakHeap, int planLength) {
+		solveTimes.add(solveTime);
+		totalRolloutsPerSecond += rolloutsPerSecond;
+		this.peakHeap = Math.max(this.peakHeap, peakHeap);
+		totalPlanLength += planLength;
+	}
+
+	/**
+	 * Records a run that failed or timed out
+	 */
+	public void addFailure() {
+		failures++;
+	}
+
+	public String getKey() {
+		return planner + "," + domain + "," + problem;
+	}
+
+	public String getPlanner() {
+		return planner;
+	}
+
+	public String getDomain() {
+		return domain;
+	}
+
+	public String getProblem() {
+		return problem;
+	}
+
+	public int getRuns() {
+		return solveTimes.size();
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	public double getSolveTimePercentile(double percentile) {
+		if (solveTimes.isEmpty()) {
+			return Double.NaN;
+		}
+		List<Double> sorted = new ArrayList<>(solveTimes);
+		Collections.sort(sorted);
+		// Nearest rank
+		int rank = (int) Math.ceil((percentile / 100.0) * sorted.size());
+		return sorted.get(Math.max(0, rank - 1));
+	}
+
+	public double getMaxSolveTime() {
+		return getSolveTimePercentile(100.0);
+	}
+
+	public double getRolloutsPerSecond() {
+		if (solveTimes.isEmpty()) {
+			return Double.NaN;
+		}
+		return totalRolloutsPerSecond / solveTimes.size();
+	}
+
+	/**
+	 * The highest heap use of any run, in bytes
+	 */
+	public long getPeakHeap() {
+		return peakHeap;
+	}
+
+	public double getPlanLength() {
+		if (solveTimes.isEmpty()) {
+			return Double.NaN;
+		}
+		return (double) totalPlanLength / solveTimes.size();
+	}
+
+	public String toCsv() {
+		return String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%.3f,%.3f,%.3f,%.1f,%.1f,%.2f",
+				planner, domain, problem, getRuns(), failures,
+				getSolveTimePercentile(50.0), getSolveTimePercentile(95.0), getMaxSolveTime(),
+				getRolloutsPerSecond(), peakHeap / (1024.0 * 1024.0), getPlanLength());
+	}
+
+	public String toJson() {
+		return String.format(Locale.ROOT, "{\"planner\": \"%s\", \"domain\": \"%s\", \"problem\": \"%s\", "
+				+ "\"runs\": %d, \"failures\": %d, \"p50_ms\": %s, \"p95_ms\": %s, \"max_ms\": %s, "
+				+ "\"rollouts_per_sec\": %s, \"peak_heap_mb\": %s, \"plan_length\": %s}",
+				planner, domain, problem, getRuns(), failures,
+				jsonNumber(getSolveTimePercentile(50.0)), jsonNumber(getSolveTimePercentile(95.0)),
+				jsonNumber(getMaxSolveTime()), jsonNumber(getRolloutsPerSecond()),
+				jsonNumber(peakHeap / (1024.0 * 1024.0)), jsonNumber(getPlanLength()));
+	}
+
+	private static String jsonNumber(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return "null";
+		}
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
@@ -0,0 +1,407 @@
+package org.cei.planner.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import javaff.JavaFF;
+import javaff.data.GroundProblem;
+import javaff.data.Plan;
+
+import org.cei.planner.IPlanner;
+import org.cei.planner.data.ProblemCache;
+import org.cei.planner.mcrw.MCRWPlanner;
+import org.cei.planner.mcts.MCTSPlanner;
+import org.cei.planner.metrics.SearchMetrics;
+import org.cei.planner.policy.MCDeadlockAvoidance;
+import org.cei.planner.policy.PureRandomWalk;
+import org.cei.planner.policy.SoftmaxTreeSearchPolicy;
+import org.cei.planner.policy.UCTPolicy;
+
+/**
+ * Solves every problem of every domain with every planner configuration and
+ * reports solve time percentiles, rollout throughput, peak heap and plan
+ * length. Results are written as CSV and JSON and can be compared against
+ * the CSV of an earlier run to flag regressions.
+ * 
+ * Options are given as name=value arguments:
+ * problems    directory holding one directory per domain (./problems/)
+ * pattern     regular expression the problem file names must match (.*)
+ * planners    comma separated configuration names (all)
+ * warmup      runs per problem that are not measured (1)
+ * seeds       measured runs per problem, seeded 1 to n (5)
+ * timeout     seconds before a run counts as failed (300)
+ * grace       seconds a timed out run is given to stop once cancelled (30)
+ * output      path of the results, without extension (benchmark-results)
+ * baseline    CSV of an earlier run to compare against (none)
+ * threshold   fraction by which a result may be worse than the baseline (0.1)
+ * cache       directory to keep ground and compiled problems in between runs (none)
+ * 
+ * A run that does not stop within the grace period is abandoned, and the
+ * remaining runs of its configuration on that problem count as failures
+ * rather than being measured alongside it.
+ * 
+ * The runner exits with status 1 if any regression is found.
+ */
+public class BenchmarkRunner {
+
+	private static final Logger LOG = Logger.getLogger(BenchmarkRunner.class.getName());
+	private static final String DOMAIN_FILE = "domain.pddl";
+
+	private File problemsDir = new File("./problems/");
+	private String pattern = ".*";
+	private List<String> planners = null;
+	private int warmup = 1;
+	private int seeds = 5;
+	private long timeout = 300;
+	private long grace = 30;
+	private String output = "benchmark-results";
+	private File baseline = null;
+	private double threshold = 0.1;
+	private File cacheDir = null;
+	private ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			// Planners that overrun are abandoned, so must not keep the JVM alive
+			Thread thread = new Thread(runnable, "benchmark-run");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		runner.configure(args);
+		List<BenchmarkResult> results = runner.run(getConfigurations());
+		runner.write(results);
+		if (runner.compareToBaseline(results) > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * The planner configurations benchmarked by default
+	 */
+	public static List<PlannerConfiguration> getConfigurations() {
+		List<PlannerConfiguration> configurations = new ArrayList<>();
+		configurations.add(new PlannerConfiguration() {
+			@Override
+			public String getName() {
+				return "MCTS_UCT";
+			}
+
+			@Override
+			public IPlanner createPlanner(long seed) {
+				MCTSPlanner planner = new MCTSPlanner(UCTPolicy.class);
+				planner.setSeed(seed);
+				return planner;
+			}
+		});
+		configurations.add(new PlannerConfiguration() {
+			@Override
+			public String getName() {
+				return "MCTS_Softmax";
+			}
+
+			@Override
+			public IPlanner createPlanner(long seed) {
+				MCTSPlanner planner = new MCTSPlanner(SoftmaxTreeSearchPolicy.class);
+				planner.setSeed(seed);
+				return planner;
+			}
+		});
+		configurations.add(new PlannerConfiguration() {
+			@Override
+			public String getName() {
+				return "MCRW";
+			}
+
+			@Override
+			public IPlanner createPlanner(long seed) {
+				MCRWPlanner planner = new MCRWPlanner(PureRandomWalk.class);
+				planner.setSeed(seed);
+				return planner;
+			}
+		});
+		configurations.add(new PlannerConfiguration() {
+			@Override
+			public String getName() {
+				return "MCRW_DA";
+			}
+
+			@Override
+			public IPlanner createPlanner(long seed) {
+				MCRWPlanner planner = new MCRWPlanner(MCDeadlockAvoidance.class);
+				planner.setSeed(seed);
+				return planner;
+			}
+		});
+		return configurations;
+	}
+
+	public void configure(String[] args) {
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split < 0) {
+				throw new IllegalArgumentException("Expected name=value but found " + arg);
+			}
+			String name = arg.substring(0, split);
+			String value = arg.substring(split + 1);
+			if (name.equals("problems")) {
+				problemsDir = new File(value);
+			} else if (name.equals("pattern")) {
+				pattern = value;
+			} else if (name.equals("planners")) {
+				planners = Arrays.asList(value.split(","));
+			} else if (name.equals("warmup")) {
+				warmup = Integer.parseInt(value);
+			} else if (name.equals("seeds")) {
+				seeds = Integer.parseInt(value);
+			} else if (name.equals("timeout")) {
+				timeout = Long.parseLong(value);
+			} else if (name.equals("grace")) {
+				grace = Long.parseLong(value);
+			} else if (name.equals("output")) {
+				output = value;
+			} else if (name.equals("baseline")) {
+				baseline = new File(value);
+			} else if (name.equals("threshold")) {
+				threshold = Double.parseDouble(value);
+			} else if (name.equals("cache")) {
+				cacheDir = new File(value);
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+	}
+
+	public List<BenchmarkResult> run(List<PlannerConfiguration> configurations) throws Exception {
+		// Divert parser output to remove it from the benchmark output
+		JavaFF.parsingOutput = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		List<BenchmarkResult> results = new ArrayList<>();
+		ProblemCache problemCache = (cacheDir == null) ? new ProblemCache(ProblemCache.DEFAULT_CAPACITY)
+				: new ProblemCache(ProblemCache.DEFAULT_CAPACITY, cacheDir);
+		File[] domains = problemsDir.listFiles();
+		if (domains == null) {
+			throw new IllegalArgumentException("No problems found in " + problemsDir);
+		}
+		Arrays.sort(domains);
+		for (File domain : domains) {
+			File domainFile = new File(domain, DOMAIN_FILE);
+			File[] problemFiles = domain.listFiles();
+			if (!domainFile.isFile() || (problemFiles == null)) {
+				continue;
+			}
+			Arrays.sort(problemFiles);
+			for (File problemFile : problemFiles) {
+				if (problemFile.getName().equals(DOMAIN_FILE) || !problemFile.getName().matches(pattern)) {
+					continue;
+				}
+				// Parse and ground once; every run shares the problem
+				GroundProblem problem = problemCache.getGroundProblem(domainFile, problemFile);
+				for (PlannerConfiguration configuration : configurations) {
+					if ((planners != null) && !planners.contains(configuration.getName())) {
+						continue;
+					}
+					BenchmarkResult result = new BenchmarkResult(configuration.getName(),
+							domain.getName(), problemFile.getName());
+					boolean stopped = true;
+					for (int i = 0; stopped && (i < warmup); i++) {
+						stopped = runOnce(configuration, problem, problemCache, -(i + 1), null);
+					}
+					for (int seed = 1; seed <= seeds; seed++) {
+						if (stopped) {
+							stopped = runOnce(configuration, problem, problemCache, seed, result);
+						} else {
+							result.addFailure();
+						}
+					}
+					if (!stopped) {
+						LOG.warning(configuration.getName() + " did not stop once cancelled; its remaining runs on "
+								+ problemFile.getName() + " count as failures");
+					}
+					LOG.info(result.toCsv());
+					results.add(result);
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Solves the problem once
+	 * @param result to record the run in, or null for a warmup run
+	 * @return false if the run timed out and was still running after the
+	 *         grace period, so could distort any run measured after it
+	 */
+	private boolean runOnce(PlannerConfiguration configuration, final GroundProblem groundProblem,
+			ProblemCache problemCache, long seed, BenchmarkResult result) throws Exception {
+		final IPlanner planner = configuration.createPlanner(seed);
+		setProblemCache(planner, problemCache);
+		System.gc();
+		resetPeakHeap();
+		final CountDownLatch finished = new CountDownLatch(1);
+		long startTime = System.nanoTime();
+		Future<Plan> futurePlan = executor.submit(new Callable<Plan>() {
+			@Override
+			public Plan call() throws Exception {
+				try {
+					return planner.solve(groundProblem);
+				} finally {
+					finished.countDown();
+				}
+			}
+		});
+		try {
+			Plan plan = futurePlan.get(timeout, TimeUnit.SECONDS);
+			double solveTime = (System.nanoTime() - startTime) * Math.pow(10, -6);
+			if (result != null) {
+				result.addRun(solveTime, getRolloutsPerSecond(planner), getPeakHeap(),
+						plan.getActions().size());
+			}
+		} catch (TimeoutException e) {
+			futurePlan.cancel(true);
+			LOG.warning(configuration.getName() + " timed out with seed " + seed);
+			if (result != null) {
+				result.addFailure();
+			}
+			// The future is done once cancelled, so wait for the solve itself
+			return finished.await(grace, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			LOG.warning(configuration.getName() + " failed with seed " + seed + ". " + e);
+			if (result != null) {
+				result.addFailure();
+			}
+		}
+		return true;
+	}
+
+	private static void setProblemCache(IPlanner planner, ProblemCache problemCache) {
+		if (planner instanceof MCTSPlanner) {
+			((MCTSPlanner) planner).setProblemCache(problemCache);
+		} else if (planner instanceof MCRWPlanner) {
+			((MCRWPlanner) planner).setProblemCache(problemCache);
+		}
+	}
+
+	private static double getRolloutsPerSecond(IPlanner planner) {
+		SearchMetrics metrics = null;
+		if (planner instanceof MCTSPlanner) {
+			metrics = ((MCTSPlanner) planner).getMetrics();
+		} else if (planner instanceof MCRWPlanner) {
+			metrics = ((MCRWPlanner) planner).getMetrics();
+		}
+		return (metrics == null) ? Double.NaN : metrics.getRolloutsPerSecond();
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	public void write(List<BenchmarkResult> results) throws IOException {
+		try (PrintWriter csv = new PrintWriter(output + ".csv", "UTF-8")) {
+			csv.println(BenchmarkResult.CSV_HEADER);
+			for (BenchmarkResult result : results) {
+				csv.println(result.toCsv());
+			}
+		}
+		try (PrintWriter json = new PrintWriter(output + ".json", "UTF-8")) {
+			json.println("[");
+			for (int i = 0; i < results.size(); i++) {
+				json.print("  " + results.get(i).toJson());
+				json.println((i < results.size() - 1) ? "," : "");
+			}
+			json.println("]");
+		}
+	}
+
+	/**
+	 * Flags results whose median solve time or rollout throughput is worse
+	 * than the baseline by more than the threshold, or that failed more
+	 * often
+	 * @return the number of regressions
+	 */
+	public int compareToBaseline(List<BenchmarkResult> results) throws IOException {
+		if (baseline == null) {
+			return 0;
+		}
+		Map<String, String[]> baselineRows = readBaseline();
+		int regressions = 0;
+		for (BenchmarkResult result : results) {
+			String[] row = baselineRows.get(result.getKey());
+			if (row == null) {
+				continue;
+			}
+			int failures = Integer.parseInt(row[4]);
+			double p50 = Double.parseDouble(row[5]);
+			double rolloutsPerSecond = Double.parseDouble(row[8]);
+			List<String> reasons = new ArrayList<>();
+			if (result.getFailures() > failures) {
+				reasons.add("failures " + failures + " -> " + result.getFailures());
+			}
+			if (result.getSolveTimePercentile(50.0) > p50 * (1 + threshold)) {
+				reasons.add("p50 " + p50 + " ms -> " + result.getSolveTimePercentile(50.0) + " ms");
+			}
+			if (result.getRolloutsPerSecond() < rolloutsPerSecond * (1 - threshold)) {
+				reasons.add("rollouts/sec " + rolloutsPerSecond + " -> " + result.getRolloutsPerSecond());
+			}
+			if (!reasons.isEmpty()) {
+				regressions++;
+				System.out.println("REGRESSION " + result.getKey() + ": " + reasons);
+			}
+		}
+		System.out.println(regressions + " regressions against " + baseline);
+		return regressions;
+	}
+
+	private Map<String, String[]> readBaseline() throws IOException {
+		Map<String, String[]> rows = new LinkedHashMap<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(baseline))) {
+			String line = reader.readLine();
+			while ((line = reader.readLine()) != null) {
+				String[] row = line.split(",");
+				rows.put(row[0] + "," + row[1] + "," + row[2], row);
+			}
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,17 @@
+package org.cei.planner.benchmark;
+
+import org.cei.planner.IPlanner;
+
+/**
+ * A named way of building a planner for the benchmark runner
+ */
+public interface PlannerConfiguration {
+
+	public String getName();
+
+	/**
+	 * Creates a planner for a single run
+	 * @param seed of the run
+	 */
+	public IPlanner createPlanner(long seed) throws Exception;
+}
@@ -0,0 +1,75 @@
+package org.cei.planner.benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.policy.PureRandomWalk;
+import org.cei.planner.policy.RandomMCRolloutPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A single rollout of RandomMCRolloutPolicy and a single walk of
+ * PureRandomWalk. Rollouts are capped so that their cost does not depend
+ * on whether a goal happens to be reached. A depth limited rollout is
+ * shorter again but ends with a heuristic evaluation of its leaf.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RolloutBenchmark {
+
+	private static final long SEED = 42;
+	private static final long ROLLOUT_LENGTH = 100;
+	private static final long ROLLOUT_DEPTH = 10;
+
+	@Param({ "driverlog", "depots", "rovers" })
+	public String domain;
+
+	@Param({ "false", "true" })
+	public boolean compiled;
+
+	private MCTSNode node = null;
+	private RandomMCRolloutPolicy rolloutPolicy = new RandomMCRolloutPolicy(ROLLOUT_LENGTH);
+	private RandomMCRolloutPolicy depthLimitedPolicy = null;
+	private PureRandomWalk walkPolicy = new PureRandomWalk(1, PureRandomWalk.DEFAULT_LENGTH_WALK,
+			PureRandomWalk.DEFAULT_ALPHA, PureRandomWalk.DEFAULT_EXTENDING_RATE);
+
+	@Setup
+	public void setup() {
+		node = BenchmarkProblems.createNode(BenchmarkProblems.load(domain),
+				BenchmarkProblems.STEPS, compiled);
+		rolloutPolicy.setRandom(new SplittableRandom(SEED));
+		depthLimitedPolicy = new RandomMCRolloutPolicy(ROLLOUT_DEPTH, node.getHValue());
+		depthLimitedPolicy.setRandom(new SplittableRandom(SEED));
+		walkPolicy.setRandom(new SplittableRandom(SEED));
+	}
+
+	@Benchmark
+	public MCTSNode randomRollout() throws Exception {
+		return rolloutPolicy.run(node);
+	}
+
+	@Benchmark
+	public MCTSNode depthLimitedRollout() throws Exception {
+		return depthLimitedPolicy.run(node);
+	}
+
+	@Benchmark
+	public MCTSNode pureRandomWalk() throws Exception {
+		return walkPolicy.run(node);
+	}
+}
@@ -0,0 +1,82 @@
+package org.cei.planner.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.util.SoftmaxSelectionHelper;
+import org.cei.planner.util.UCTSelectionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Softmax and UCT selection among the successors of an expanded node whose
+ * statistics look like those of a node partway through a search
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+	private static final long SEED = 42;
+	private static final int VISITS = 100;
+
+	@Param({ "driverlog", "depots", "rovers" })
+	public String domain;
+
+	private MCTSNode node = null;
+	private List<MCTSNode> successors = null;
+	private SoftmaxSelectionHelper softmax = new SoftmaxSelectionHelper();
+	private UCTSelectionHelper uct = new UCTSelectionHelper();
+
+	@Setup
+	public void setup() {
+		node = BenchmarkProblems.createNode(BenchmarkProblems.load(domain),
+				BenchmarkProblems.STEPS, true);
+		Random random = new Random(SEED);
+		for (int slot = 0; slot < node.getSuccessorCount(); slot++) {
+			MCTSNode successor = node.getSuccessor(slot);
+			int visits = 1 + random.nextInt(VISITS);
+			node.setSuccessorVisits(slot, visits);
+			successor.setValue(random.nextDouble());
+			for (int i = 0; i < visits; i++) {
+				node.visited();
+				successor.visited();
+				if (random.nextBoolean()) {
+					successor.selected();
+				}
+			}
+		}
+		successors = node.getSuccessorNodes();
+		softmax.setRandom(new SplittableRandom(SEED));
+	}
+
+	@Benchmark
+	public MCTSNode softmaxValueSelection() {
+		return softmax.softmaxValueSelection(successors);
+	}
+
+	@Benchmark
+	public MCTSNode softmaxQValueSelection() {
+		return softmax.softmaxQValueSelection(successors);
+	}
+
+	@Benchmark
+	public int uctSelect() {
+		return uct.select(node);
+	}
+}
@@ -0,0 +1,65 @@
+package org.cei.planner.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javaff.data.Action;
+import javaff.planning.State;
+
+import org.cei.planner.data.BitState;
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.MCTSNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Application of an action to a JavaFF state, State.apply, and to the
+ * compiled form of the same state
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateApplyBenchmark {
+
+	@Param({ "driverlog", "depots", "rovers" })
+	public String domain;
+
+	private State state = null;
+	private Action action = null;
+	private CompiledProblem compiledProblem = null;
+	private BitState bitState = null;
+	private int compiledAction = -1;
+
+	@Setup
+	public void setup() {
+		MCTSNode node = BenchmarkProblems.createNode(BenchmarkProblems.load(domain),
+				BenchmarkProblems.STEPS, true);
+		compiledProblem = node.getContext().getCompiledProblem();
+		state = node.getState();
+		bitState = node.getBitState();
+		int[] applicable = new int[compiledProblem.getNumActions()];
+		compiledProblem.getApplicableActions(bitState, applicable);
+		compiledAction = applicable[0];
+		action = compiledProblem.getAction(compiledAction);
+	}
+
+	@Benchmark
+	public State apply() {
+		return state.apply(action);
+	}
+
+	@Benchmark
+	public BitState applyCompiled() {
+		return compiledProblem.apply(bitState, compiledAction);
+	}
+}
@@ -0,0 +1,56 @@
+package org.cei.planner.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.cei.planner.data.MCTSNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Expansion of a node on JavaFF and compiled states. Successors are
+ * created lazily, so generateSuccessors creates every successor, as a full
+ * expansion did before, while findApplicableActions only records the
+ * actions of the slots.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuccessorGenerationBenchmark {
+
+	@Param({ "driverlog", "depots", "rovers" })
+	public String domain;
+
+	@Param({ "false", "true" })
+	public boolean compiled;
+
+	private MCTSNode node = null;
+
+	@Setup
+	public void setup() {
+		node = BenchmarkProblems.createNode(BenchmarkProblems.load(domain),
+				BenchmarkProblems.STEPS, compiled);
+	}
+
+	@Benchmark
+	public int generateSuccessors() {
+		// Successors are generated once per node, so expand a fresh one
+		return BenchmarkProblems.copyNode(node).getSuccessorNodes().size();
+	}
+
+	@Benchmark
+	public int findApplicableActions() {
+		return BenchmarkProblems.copyNode(node).getSuccessorCount();
+	}
+}
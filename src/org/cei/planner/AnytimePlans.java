@@ -0,0 +1,118 @@
+package org.cei.planner;
+
+import javaff.data.Action;
+import javaff.data.GroundProblem;
+import javaff.data.Metric;
+import javaff.data.Plan;
+import javaff.planning.MetricState;
+import javaff.planning.State;
+
+/**
+ * The best plan an anytime search has found so far. Plans are compared by
+ * the metric of the problem, or by length if it has none, and only a
+ * strictly better plan replaces the best one and is passed on to the
+ * listener. Plans of equal cost are compared by length.
+ */
+public class AnytimePlans {
+
+	private IPlanListener listener = null;
+	// Only set when the problem has a metric
+	private GroundProblem problem = null;
+	private Plan best = null;
+	private int bestLength = Integer.MAX_VALUE;
+	private double bestCost = Double.POSITIVE_INFINITY;
+
+	/**
+	 * Compares plans by length
+	 * @param listener may be null
+	 */
+	public AnytimePlans(IPlanListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @param listener may be null
+	 * @param problem whose metric, if it has one, plans are compared by
+	 */
+	public AnytimePlans(IPlanListener listener, GroundProblem problem) {
+		this(listener);
+		if (problem.metric != null) {
+			this.problem = problem;
+		}
+	}
+
+	/**
+	 * @return whether the plan is the new best plan
+	 */
+	public boolean offer(Plan plan) {
+		return offer(plan, getCost(plan));
+	}
+
+	/**
+	 * @param cost of the plan, lower being better
+	 * @return whether the plan is the new best plan
+	 */
+	public synchronized boolean offer(Plan plan, double cost) {
+		int length = plan.getActions().size();
+		if ((cost > bestCost) || ((cost == bestCost) && (length >= bestLength))) {
+			return false;
+		}
+		best = plan;
+		bestLength = length;
+		bestCost = cost;
+		if (listener != null) {
+			listener.planFound(plan);
+		}
+		return true;
+	}
+
+	/**
+	 * The best plan, or null if none has been found
+	 */
+	public synchronized Plan getBest() {
+		return best;
+	}
+
+	/**
+	 * The length of the best plan, or Integer.MAX_VALUE if none has been
+	 * found
+	 */
+	public synchronized int getBestLength() {
+		return bestLength;
+	}
+
+	/**
+	 * The cost of the best plan, its length if the problem has no metric,
+	 * or infinity if none has been found
+	 */
+	public synchronized double getBestCost() {
+		return bestCost;
+	}
+
+	/**
+	 * Whether no plan of the given length or longer can replace the best.
+	 * Under a metric a longer plan may still cost less, so plans are only
+	 * ruled out by length when the problem has none.
+	 */
+	public synchronized boolean isRuledOut(int length) {
+		return (problem == null) && (length >= bestLength);
+	}
+
+	/**
+	 * The metric of the state the plan reaches from the initial state,
+	 * negated if the metric is maximised, or the length of the plan if the
+	 * problem has no metric
+	 */
+	private double getCost(Plan plan) {
+		if (problem == null) {
+			return plan.getActions().size();
+		}
+		State state = problem.getMetricInitialState();
+		for (Object action : plan.getActions()) {
+			state = state.apply((Action) action);
+		}
+		Metric metric = problem.metric;
+		double value = metric.func.getValue((MetricState) state).doubleValue();
+		return (metric.type == Metric.MAXIMIZE) ? -value : value;
+	}
+}
@@ -0,0 +1,12 @@
+package org.cei.planner;
+
+import javaff.data.Plan;
+
+/**
+ * Receives the plans an anytime planner finds, each strictly better than
+ * the last: cheaper under the metric of the problem, or shorter if it has
+ * none
+ */
+public interface IPlanListener {
+	public void planFound(Plan plan);
+}
@@ -0,0 +1,9 @@
+package org.cei.planner;
+
+public enum JobStatusEnum {
+	SOLVED, // A plan was found
+	UNSOLVED, // The planner finished without a plan
+	TIMEOUT, // Cancelled for running past the time limit
+	MEMORY, // Cancelled for using more than the memory limit
+	ERROR // The problem could not be read or the planner failed
+}
@@ -1,12 +1,449 @@
 package org.cei.planner;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javaff.JavaFF;
+import javaff.data.GroundProblem;
+import javaff.data.Plan;
+
+import org.cei.planner.data.ProblemCache;
+import org.cei.planner.mcrw.MCRWPlanner;
+import org.cei.planner.mcts.MCTSPlanner;
+import org.cei.planner.metrics.SearchMetrics;
+import org.cei.planner.policy.MCDeadlockAvoidance;
+import org.cei.planner.policy.PureRandomWalk;
+import org.cei.planner.policy.SoftmaxTreeSearchPolicy;
+import org.cei.planner.policy.UCTPolicy;
+
+/**
+ * Solves a single problem, or runs as a batch service solving many problems
+ * in one JVM.
+ *
+ * Given a domain file and a problem file, the problem is solved and its
+ * plan printed. Otherwise options are given as name=value arguments and
+ * jobs are read from the manifest, one per line as a domain file, a problem
+ * file and an optional id, with blank lines and lines starting with #
+ * skipped. Jobs run concurrently as they are read, and the result of each
+ * is written as a line of JSON as soon as it finishes.
+ *
+ * manifest    file of jobs, or - for standard input (-)
+ * jobs        jobs run at once; reading waits while all are busy (processors)
+ * timeout     seconds a job may run before it is cancelled, 0 for none (300)
+ * memory      megabytes of heap a job may use, 0 for none (0)
+ * planner     MCTS_UCT, MCTS_SOFTMAX, MCRW or MCRW_DA (MCTS_UCT)
+ * seed        seed of every solve (drawn per solve)
+ * iterations  MCTS iterations per move, 0 to end moves on time (0)
+ * compiled    search on compiled states (false)
+ * cache       directory to keep ground and compiled problems in between runs (none)
+ * output      file to write results to (standard output)
+ *
+ * Jobs share a single heap, so the memory limit is checked against an even
+ * share of the heap live after the last collection. Once the running jobs
+ * together use more than their limits, the most recently started is
+ * cancelled. Cancelled planners stop at their next check for interruption.
+ */
 public class Launcher {
 
-	public static void main(String[] args) {
-		if (args.length != 2) {
-			throw new IllegalArgumentException(
-					"Usage MCTSPlanner domainFile problemFile");
+	private static final Logger LOG = Logger.getLogger(Launcher.class.getName());
+	// Milliseconds between checks of the running jobs
+	private static final long WATCHDOG_INTERVAL = 100;
+	private static final int CACHED_PROBLEMS_PER_JOB = 4;
+
+	private String manifest = "-";
+	private int jobs = Runtime.getRuntime().availableProcessors();
+	private long timeout = 300;
+	private long memory = 0;
+	private PlannerTypeEnum plannerType = PlannerTypeEnum.MCTS_UCT;
+	private Long seed = null;
+	private long iterations = 0;
+	private boolean compiled = false;
+	private File cacheDir = null;
+	private String output = null;
+
+	private ProblemCache problemCache = null;
+	private PrintStream results = null;
+	private Semaphore slots = null;
+	// Registers every job until its result is written
+	private Phaser pending = new Phaser(1);
+	private Set<Job> running = ConcurrentHashMap.newKeySet();
+	private AtomicInteger submitted = new AtomicInteger();
+	// Collections counted when a job was last cancelled for memory
+	private long cancelledAtCollection = -1;
+
+	public static void main(String[] args) throws Exception {
+		if ((args.length == 2) && !args[0].contains("=") && !args[1].contains("=")) {
+			solve(new File(args[0]), new File(args[1]));
+			return;
+		}
+		Launcher launcher = new Launcher();
+		launcher.configure(args);
+		launcher.run();
+	}
+
+	private static void solve(File domain, File problem) throws Exception {
+		PDDLPlanner planner = new PDDLPlanner(domain, problem, new MCTSPlanner(UCTPolicy.class));
+		Plan plan = planner.call();
+		if (plan == null) {
+			System.out.println("No plan found");
+		} else {
+			plan.print(System.out);
+		}
+	}
+
+	public void configure(String[] args) {
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split < 0) {
+				throw new IllegalArgumentException("Usage: Launcher domainFile problemFile, "
+						+ "or Launcher name=value... Expected name=value but found " + arg);
+			}
+			String name = arg.substring(0, split);
+			String value = arg.substring(split + 1);
+			if (name.equals("manifest")) {
+				manifest = value;
+			} else if (name.equals("jobs")) {
+				jobs = Integer.parseInt(value);
+				if (jobs < 1) {
+					throw new IllegalArgumentException("Number of jobs must be at least 1");
+				}
+			} else if (name.equals("timeout")) {
+				timeout = Long.parseLong(value);
+			} else if (name.equals("memory")) {
+				memory = Long.parseLong(value);
+			} else if (name.equals("planner")) {
+				plannerType = PlannerTypeEnum.valueOf(value.toUpperCase(Locale.ROOT));
+			} else if (name.equals("seed")) {
+				seed = Long.valueOf(value);
+			} else if (name.equals("iterations")) {
+				iterations = Long.parseLong(value);
+			} else if (name.equals("compiled")) {
+				compiled = Boolean.parseBoolean(value);
+			} else if (name.equals("cache")) {
+				cacheDir = new File(value);
+			} else if (name.equals("output")) {
+				output = value;
+			} else {
+				throw new IllegalArgumentException("Unknown option " + name);
+			}
+		}
+	}
+
+	/**
+	 * Reads and runs every job of the manifest, returning once the result
+	 * of each has been written
+	 */
+	public void run() throws IOException, InterruptedException {
+		// Divert parser output so that only results are written
+		JavaFF.parsingOutput = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		int capacity = Math.max(ProblemCache.DEFAULT_CAPACITY, jobs * CACHED_PROBLEMS_PER_JOB);
+		problemCache = (cacheDir == null) ? new ProblemCache(capacity) : new ProblemCache(capacity, cacheDir);
+		results = (output == null) ? System.out : new PrintStream(new FileOutputStream(output, true), false, "UTF-8");
+		slots = new Semaphore(jobs);
+		ExecutorService executor = Executors.newFixedThreadPool(jobs, new DaemonThreadFactory("launcher-job"));
+		ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(
+				new DaemonThreadFactory("launcher-watchdog"));
+		watchdog.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkJobs();
+			}
+		}, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL, TimeUnit.MILLISECONDS);
+		try (BufferedReader reader = new BufferedReader(manifest.equals("-")
+				? new InputStreamReader(System.in, "UTF-8") : new FileReader(manifest))) {
+			String line = null;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\\s+");
+				if (fields.length < 2) {
+					LOG.warning("Skipping line " + lineNumber + ". Expected a domain file and a problem file.");
+					continue;
+				}
+				String id = (fields.length > 2) ? fields[2] : String.valueOf(lineNumber);
+				// Wait for a free slot, so that jobs are read no faster than they run
+				slots.acquire();
+				submit(executor, new Job(id, new File(fields[0]), new File(fields[1])));
+			}
+			pending.arriveAndAwaitAdvance();
+		} finally {
+			watchdog.shutdownNow();
+			// Planners that ignore cancellation are abandoned with their daemon threads
+			executor.shutdownNow();
+			results.flush();
+			if (results != System.out) {
+				results.close();
+			}
+		}
+		LOG.info(submitted.get() + " jobs completed");
+	}
+
+	private void submit(ExecutorService executor, Job job) {
+		pending.register();
+		submitted.incrementAndGet();
+		job.task = new FutureTask<Void>(job, null);
+		executor.execute(job.task);
+	}
+
+	/**
+	 * Cancels jobs that have run past the time limit, and the most recently
+	 * started job when the running jobs use more than their memory limits
+	 */
+	private void checkJobs() {
+		long now = System.nanoTime();
+		Job youngest = null;
+		int active = 0;
+		for (Job job : running) {
+			if (job.isReported()) {
+				continue;
+			}
+			if ((timeout > 0) && (now - job.startTime > TimeUnit.SECONDS.toNanos(timeout))) {
+				job.cancel(JobStatusEnum.TIMEOUT);
+				continue;
+			}
+			active++;
+			if ((youngest == null) || (job.startTime > youngest.startTime)) {
+				youngest = job;
+			}
+		}
+		if ((memory <= 0) || (youngest == null)) {
+			return;
+		}
+		long collections = getCollectionCount();
+		// Heap use is only known again after the next collection
+		if ((collections == cancelledAtCollection) || (getLiveHeap() <= memory * 1024 * 1024 * active)) {
+			return;
+		}
+		cancelledAtCollection = collections;
+		youngest.cancel(JobStatusEnum.MEMORY);
+	}
+
+	/**
+	 * The heap in use after the last collection of each pool
+	 */
+	private static long getLiveHeap() {
+		long live = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				MemoryUsage usage = pool.getCollectionUsage();
+				live += (usage == null) ? pool.getUsage().getUsed() : usage.getUsed();
+			}
+		}
+		return live;
+	}
+
+	private static long getCollectionCount() {
+		long collections = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			collections += Math.max(0, collector.getCollectionCount());
+		}
+		return collections;
+	}
+
+	private IPlanner createPlanner() {
+		switch (plannerType) {
+		case MCTS_SOFTMAX:
+			return createMCTSPlanner(new MCTSPlanner(SoftmaxTreeSearchPolicy.class));
+		case MCRW:
+			return createMCRWPlanner(new MCRWPlanner(PureRandomWalk.class));
+		case MCRW_DA:
+			return createMCRWPlanner(new MCRWPlanner(MCDeadlockAvoidance.class));
+		default:
+			return createMCTSPlanner(new MCTSPlanner(UCTPolicy.class));
+		}
+	}
+
+	private IPlanner createMCTSPlanner(MCTSPlanner planner) {
+		planner.setCompiled(compiled);
+		planner.setProblemCache(problemCache);
+		if (seed != null) {
+			planner.setSeed(seed);
+		}
+		planner.setIterationsPerMove(iterations);
+		return planner;
+	}
+
+	private IPlanner createMCRWPlanner(MCRWPlanner planner) {
+		planner.setCompiled(compiled);
+		planner.setProblemCache(problemCache);
+		if (seed != null) {
+			planner.setSeed(seed);
+		}
+		return planner;
+	}
+
+	private static SearchMetrics getMetrics(IPlanner planner) {
+		if (planner instanceof MCTSPlanner) {
+			return ((MCTSPlanner) planner).getMetrics();
+		} else if (planner instanceof MCRWPlanner) {
+			return ((MCRWPlanner) planner).getMetrics();
+		}
+		return null;
+	}
+
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c == '"') || (c == '\\')) {
+				quoted.append('\\').append(c);
+			} else if (c < ' ') {
+				quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos * Math.pow(10, -6));
+	}
+
+	/**
+	 * A problem to solve. Its result is written exactly once, either when
+	 * it finishes or when it is cancelled.
+	 */
+	private class Job implements Runnable {
+
+		private String id = null;
+		private File domain = null;
+		private File problem = null;
+		private long submitTime = System.nanoTime();
+		private volatile long startTime = 0;
+		private volatile long groundedTime = 0;
+		private volatile IPlanner planner = null;
+		private FutureTask<Void> task = null;
+		private AtomicBoolean reported = new AtomicBoolean();
+
+		public Job(String id, File domain, File problem) {
+			this.id = id;
+			this.domain = domain;
+			this.problem = problem;
+		}
+
+		@Override
+		public void run() {
+			startTime = System.nanoTime();
+			running.add(this);
+			try {
+				GroundProblem groundProblem = problemCache.getGroundProblem(domain, problem);
+				groundedTime = System.nanoTime();
+				planner = createPlanner();
+				Plan plan = planner.solve(groundProblem);
+				report((plan == null) ? JobStatusEnum.UNSOLVED : JobStatusEnum.SOLVED, plan, null);
+			} catch (OutOfMemoryError e) {
+				report(JobStatusEnum.MEMORY, null, e);
+			} catch (Throwable e) {
+				// Also the interruption of a job already reported as cancelled
+				report(JobStatusEnum.ERROR, null, e);
+			} finally {
+				running.remove(this);
+				slots.release();
+			}
+		}
+
+		public boolean isReported() {
+			return reported.get();
+		}
+
+		public void cancel(JobStatusEnum status) {
+			report(status, null, null);
+			task.cancel(true);
+		}
+
+		private void report(JobStatusEnum status, Plan plan, Throwable error) {
+			if (!reported.compareAndSet(false, true)) {
+				return;
+			}
+			long endTime = System.nanoTime();
+			StringBuilder result = new StringBuilder();
+			result.append("{\"id\": ").append(quote(id));
+			result.append(", \"domain\": ").append(quote(domain.getPath()));
+			result.append(", \"problem\": ").append(quote(problem.getPath()));
+			result.append(", \"status\": ").append(quote(status.name()));
+			result.append(", \"queued_ms\": ").append(millis(startTime - submitTime));
+			if (groundedTime > 0) {
+				result.append(", \"ground_ms\": ").append(millis(groundedTime - startTime));
+				result.append(", \"solve_ms\": ").append(millis(endTime - groundedTime));
+			}
+			if (plan != null) {
+				result.append(", \"plan_length\": ").append(plan.getActions().size());
+				result.append(", \"plan\": [");
+				String separator = "";
+				for (Object action : plan.getActions()) {
+					result.append(separator).append(quote(action.toString()));
+					separator = ", ";
+				}
+				result.append("]");
+			}
+			SearchMetrics metrics = getMetrics(planner);
+			if (metrics != null) {
+				result.append(String.format(Locale.ROOT, ", \"nodes_created\": %d, \"rollouts\": %d, "
+						+ "\"rollouts_per_sec\": %.1f, \"heuristic_evaluations\": %d, \"heuristic_cache_hit_rate\": %.4f",
+						metrics.getNodesCreated(), metrics.getRollouts(), metrics.getRolloutsPerSecond(),
+						metrics.getHeuristicEvaluations(), metrics.getHeuristicCacheHitRate()));
+			}
+			if (error != null) {
+				result.append(", \"error\": ").append(quote(String.valueOf(error)));
+			}
+			result.append("}");
+			synchronized (results) {
+				results.println(result);
+				results.flush();
+			}
+			pending.arriveAndDeregister();
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private String name = null;
+		private AtomicInteger threads = new AtomicInteger();
+
+		public DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			// Jobs that ignore cancellation must not keep the JVM alive
+			Thread thread = new Thread(runnable, name + "-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
-		
 	}
 }
@@ -8,19 +8,36 @@ import javaff.data.Plan;
 import javaff.data.UngroundProblem;
 import javaff.parser.PDDL21parser;
 
+import org.cei.planner.data.ProblemCache;
+
 public class PDDLPlanner implements Callable<Plan> {
 
 	private IPlanner planner = null;
 	private UngroundProblem ungroundProblem = null; 
+	private File domain = null;
+	private File problem = null;
+	private ProblemCache problemCache = null;
 	
 	public PDDLPlanner (File domain, File problem, IPlanner planner) {
 		this.planner = planner;
 		this.ungroundProblem = PDDL21parser.parseFiles(domain, problem);
 	}
 
+	/**
+	 * Takes the ground problem from the cache when it is called, so the
+	 * files are only parsed and grounded if the cache does not hold them
+	 */
+	public PDDLPlanner (File domain, File problem, IPlanner planner, ProblemCache problemCache) {
+		this.planner = planner;
+		this.domain = domain;
+		this.problem = problem;
+		this.problemCache = problemCache;
+	}
+
 	@Override
 	public Plan call() throws Exception {
-		GroundProblem groundProblem = ungroundProblem.ground();
+		GroundProblem groundProblem = (problemCache == null) ? ungroundProblem.ground()
+				: problemCache.getGroundProblem(domain, problem);
 		return planner.solve(groundProblem);
 	}
 }
@@ -0,0 +1,8 @@
+package org.cei.planner;
+
+public enum PlannerTypeEnum {
+	MCTS_UCT, // MCTS with the UCT tree policy
+	MCTS_SOFTMAX, // MCTS with the softmax tree policy
+	MCRW, // Monte Carlo random walks
+	MCRW_DA // Monte Carlo random walks with deadlock avoidance
+}
@@ -0,0 +1,47 @@
+package org.cei.planner.data;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of true propositions of a compiled problem, one bit per
+ * proposition
+ */
+public final class BitState {
+
+	private final long[] bits;
+	private final int hash;
+
+	public BitState(long[] bits) {
+		this.bits = bits;
+		this.hash = Arrays.hashCode(bits);
+	}
+
+	/**
+	 * The bits of the state. Callers must not modify them.
+	 */
+	public long[] getBits() {
+		return bits;
+	}
+
+	public boolean isTrue(int proposition) {
+		return (bits[proposition >>> 6] & (1L << proposition)) != 0;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (other instanceof BitState) {
+			BitState otherState = (BitState) other;
+			return (hash == otherState.hash)
+					&& Arrays.equals(bits, otherState.bits);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
@@ -0,0 +1,326 @@
+package org.cei.planner.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javaff.data.Action;
+import javaff.data.GroundProblem;
+import javaff.data.strips.Proposition;
+
+/**
+ * A ground problem compiled to integers. Propositions are numbered, states
+ * are bit sets over them and each action is a precondition, add and delete
+ * mask. Only propositional STRIPS problems can be compiled.
+ * 
+ * A compiled problem can be written to a binary file and read back for the
+ * same ground problem. The file is a fixed header followed by the initial
+ * state, the goal and the precondition, add and delete mask of each action,
+ * every mask being the same number of longs, and is memory mapped to read.
+ */
+public class CompiledProblem {
+
+	private static final int MAGIC = 0x4D435450; // MCTP
+	private static final int VERSION = 1;
+	// Magic, version, fingerprint, actions, propositions, words and padding
+	private static final int HEADER_BYTES = 32;
+
+	private Action[] actions = null;
+	private long[][] preconditions = null;
+	private long[][] addEffects = null;
+	private long[][] deleteEffects = null;
+	private long[] goal = null;
+	private BitState initialState = null;
+	private SuccessorGenerator successorGenerator = null;
+	private Map<Proposition, Integer> propositions = new HashMap<>();
+	private int words = 0;
+	private int numPropositions = 0;
+
+	/**
+	 * @param problem
+	 * @throws IllegalArgumentException if the problem has conditions or
+	 *             effects that are not propositions
+	 */
+	public CompiledProblem(GroundProblem problem) {
+		this.actions = problem.actions.toArray(new Action[problem.actions.size()]);
+		// Number every proposition before building masks
+		for (Proposition proposition : problem.initial) {
+			index(proposition);
+		}
+		for (Object goal : problem.goal.getConditionalPropositions()) {
+			index(goal);
+		}
+		for (Action action : actions) {
+			indexAll(action.getPreconditions());
+			indexAll(action.getAddPropositions());
+			indexAll(action.getDeletePropositions());
+		}
+		this.words = Math.max(1, (propositions.size() + 63) >>> 6);
+		this.preconditions = new long[actions.length][];
+		this.addEffects = new long[actions.length][];
+		this.deleteEffects = new long[actions.length][];
+		for (int i = 0; i < actions.length; i++) {
+			preconditions[i] = toMask(actions[i].getPreconditions());
+			addEffects[i] = toMask(actions[i].getAddPropositions());
+			deleteEffects[i] = toMask(actions[i].getDeletePropositions());
+		}
+		this.goal = toMask(problem.goal.getConditionalPropositions());
+		this.initialState = new BitState(toMask(problem.initial));
+		this.successorGenerator = new SuccessorGenerator(toIndices(preconditions));
+		this.numPropositions = propositions.size();
+	}
+
+	private CompiledProblem(Action[] actions, int numPropositions, int words, LongBuffer masks) {
+		this.actions = actions;
+		this.numPropositions = numPropositions;
+		this.words = words;
+		this.initialState = new BitState(readMask(masks));
+		this.goal = readMask(masks);
+		this.preconditions = new long[actions.length][];
+		this.addEffects = new long[actions.length][];
+		this.deleteEffects = new long[actions.length][];
+		for (int i = 0; i < actions.length; i++) {
+			preconditions[i] = readMask(masks);
+			addEffects[i] = readMask(masks);
+			deleteEffects[i] = readMask(masks);
+		}
+		this.successorGenerator = new SuccessorGenerator(toIndices(preconditions));
+	}
+
+	/**
+	 * Reads a problem written by {@link #write(File)} from the same ground
+	 * problem
+	 * @return the compiled problem, or null if the file was not written
+	 *         from this ground problem or is incomplete
+	 */
+	public static CompiledProblem read(File file, GroundProblem problem) throws IOException {
+		Action[] actions = problem.actions.toArray(new Action[problem.actions.size()]);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				return null;
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)
+					|| (buffer.getLong() != fingerprint(actions)) || (buffer.getInt() != actions.length)) {
+				return null;
+			}
+			int numPropositions = buffer.getInt();
+			int words = buffer.getInt();
+			if (channel.size() != getFileSize(actions.length, words)) {
+				return null;
+			}
+			buffer.position(HEADER_BYTES);
+			return new CompiledProblem(actions, numPropositions, words, buffer.slice().asLongBuffer());
+		}
+	}
+
+	/**
+	 * Writes the problem to the file, replacing it. The file is written
+	 * alongside and moved into place, so a reader never sees it in part.
+	 */
+	public void write(File file) throws IOException {
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeLong(fingerprint(actions));
+				output.writeInt(actions.length);
+				output.writeInt(numPropositions);
+				output.writeInt(words);
+				output.writeInt(0);
+				writeMask(output, initialState.getBits());
+				writeMask(output, goal);
+				for (int i = 0; i < actions.length; i++) {
+					writeMask(output, preconditions[i]);
+					writeMask(output, addEffects[i]);
+					writeMask(output, deleteEffects[i]);
+				}
+			}
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	public BitState getInitialState() {
+		return initialState;
+	}
+
+	public int getNumActions() {
+		return actions.length;
+	}
+
+	public int getNumPropositions() {
+		return numPropositions;
+	}
+
+	/**
+	 * Number of longs in the bits of a state
+	 */
+	public int getWords() {
+		return words;
+	}
+
+	public Action getAction(int action) {
+		return actions[action];
+	}
+
+	public boolean isGoal(BitState state) {
+		return isGoal(state.getBits());
+	}
+
+	public boolean isGoal(long[] bits) {
+		return contains(bits, goal);
+	}
+
+	public boolean isApplicable(BitState state, int action) {
+		return contains(state.getBits(), preconditions[action]);
+	}
+
+	/**
+	 * Writes the indices of the actions applicable in the state to the
+	 * array, which must hold every action
+	 * @return the number of applicable actions
+	 */
+	public int getApplicableActions(BitState state, int[] applicable) {
+		return getApplicableActions(state.getBits(), applicable);
+	}
+
+	public int getApplicableActions(long[] bits, int[] applicable) {
+		return successorGenerator.getApplicableActions(bits, applicable);
+	}
+
+	public boolean hasApplicableAction(BitState state) {
+		return successorGenerator.hasApplicableAction(state.getBits());
+	}
+
+	public BitState apply(BitState state, int action) {
+		long[] bits = state.getBits().clone();
+		long[] delete = deleteEffects[action];
+		long[] add = addEffects[action];
+		for (int i = 0; i < words; i++) {
+			bits[i] = (bits[i] & ~delete[i]) | add[i];
+		}
+		return new BitState(bits);
+	}
+
+	/**
+	 * Applies the action to the bits of a state in place, for callers that
+	 * step a single working state rather than keep each state reached
+	 */
+	public void applyInPlace(long[] bits, int action) {
+		long[] delete = deleteEffects[action];
+		long[] add = addEffects[action];
+		for (int i = 0; i < words; i++) {
+			bits[i] = (bits[i] & ~delete[i]) | add[i];
+		}
+	}
+
+	private static boolean contains(long[] bits, long[] mask) {
+		for (int i = 0; i < mask.length; i++) {
+			if ((bits[i] & mask[i]) != mask[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long getFileSize(int numActions, int words) {
+		return HEADER_BYTES + ((2L + (3L * numActions)) * words * 8);
+	}
+
+	/**
+	 * Identifies the actions in the order they are numbered, so that a file
+	 * is only read for a ground problem that numbers its actions the same
+	 */
+	private static long fingerprint(Action[] actions) {
+		long fingerprint = actions.length;
+		for (Action action : actions) {
+			fingerprint = (31 * fingerprint) + action.toString().hashCode();
+		}
+		return fingerprint;
+	}
+
+	private long[] readMask(LongBuffer masks) {
+		long[] mask = new long[words];
+		masks.get(mask);
+		return mask;
+	}
+
+	private static void writeMask(DataOutputStream output, long[] mask) throws IOException {
+		for (long word : mask) {
+			output.writeLong(word);
+		}
+	}
+
+	private void indexAll(Collection<?> facts) {
+		for (Object fact : facts) {
+			index(fact);
+		}
+	}
+
+	private int index(Object fact) {
+		if (!(fact instanceof Proposition)) {
+			throw new IllegalArgumentException("Cannot compile non-propositional fact " + fact);
+		}
+		Proposition proposition = (Proposition) fact;
+		Integer index = propositions.get(proposition);
+		if (index == null) {
+			index = propositions.size();
+			propositions.put(proposition, index);
+		}
+		return index;
+	}
+
+	/**
+	 * The propositions set in each mask, in increasing order
+	 */
+	private static int[][] toIndices(long[][] masks) {
+		int[][] indices = new int[masks.length][];
+		for (int i = 0; i < masks.length; i++) {
+			long[] mask = masks[i];
+			int count = 0;
+			for (long word : mask) {
+				count += Long.bitCount(word);
+			}
+			indices[i] = new int[count];
+			int next = 0;
+			for (int w = 0; w < mask.length; w++) {
+				long word = mask[w];
+				while (word != 0) {
+					indices[i][next++] = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+		}
+		return indices;
+	}
+
+	private long[] toMask(Collection<?> facts) {
+		long[] mask = new long[words];
+		for (Object fact : facts) {
+			int index = index(fact);
+			mask[index >>> 6] |= 1L << index;
+		}
+		return mask;
+	}
+}
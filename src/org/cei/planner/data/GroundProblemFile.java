@@ -0,0 +1,286 @@
+package org.cei.planner.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javaff.data.Action;
+import javaff.data.GroundProblem;
+import javaff.data.metric.NamedFunction;
+import javaff.data.strips.And;
+import javaff.data.strips.NotProposition;
+import javaff.data.strips.OperatorName;
+import javaff.data.strips.PDDLObject;
+import javaff.data.strips.Parameter;
+import javaff.data.strips.PredicateSymbol;
+import javaff.data.strips.Proposition;
+import javaff.data.strips.STRIPSInstantAction;
+
+/**
+ * Writes a ground problem to a binary file and rebuilds it from the file
+ * without the parser, so a restarted process need not parse and ground a
+ * problem again. Only propositional STRIPS problems without a metric or
+ * function values can be written.
+ *
+ * The file is a header followed by a table of names, the propositions as a
+ * predicate and its arguments, each action as a name, its arguments and its
+ * precondition, add and delete propositions, and finally the initial state
+ * and goal. Names and propositions are written as their index in the table.
+ * Actions are rebuilt in the order they were written, so a compiled problem
+ * written from the original problem also reads for the rebuilt one.
+ */
+public class GroundProblemFile {
+
+	private static final int MAGIC = 0x4D435447; // MCTG
+	private static final int VERSION = 1;
+
+	private GroundProblemFile() {
+	}
+
+	/**
+	 * Writes the problem to the file, replacing it. The file is written
+	 * alongside and moved into place, so a reader never sees it in part.
+	 * @throws IllegalArgumentException if the problem has a metric, function
+	 *             values or anything other than STRIPS actions and
+	 *             propositions
+	 */
+	public static void write(GroundProblem problem, File file) throws IOException {
+		if ((problem.metric != null) || ((problem.functionValues != null) && !problem.functionValues.isEmpty())) {
+			throw new IllegalArgumentException("Cannot write a problem with a metric or function values");
+		}
+		Table table = new Table();
+		List<int[]> actions = new ArrayList<>(problem.actions.size());
+		for (Action action : problem.actions) {
+			if (!(action instanceof STRIPSInstantAction)) {
+				throw new IllegalArgumentException("Cannot write non-STRIPS action " + action);
+			}
+			actions.add(table.addAction(action));
+		}
+		int[] initial = table.addPropositions(problem.initial);
+		int[] goal = table.addPropositions(problem.goal.getConditionalPropositions());
+		File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeInt(table.names.size());
+				for (String name : table.names) {
+					output.writeUTF(name);
+				}
+				output.writeInt(table.propositions.size());
+				for (int[] proposition : table.propositions) {
+					writeIndices(output, proposition);
+				}
+				output.writeInt(actions.size());
+				for (int[] action : actions) {
+					writeIndices(output, action);
+				}
+				writeIndices(output, initial);
+				writeIndices(output, goal);
+			}
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * Rebuilds a problem written by {@link #write(GroundProblem, File)}
+	 * @return the problem, or null if the file is not of this version, is
+	 *         incomplete or is corrupt
+	 */
+	public static GroundProblem read(File file) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if ((input.readInt() != MAGIC) || (input.readInt() != VERSION)) {
+				return null;
+			}
+			String[] names = new String[input.readInt()];
+			for (int i = 0; i < names.length; i++) {
+				names[i] = input.readUTF();
+			}
+			// Rebuilt objects and predicates are shared like parsed ones
+			Map<String, PDDLObject> objects = new HashMap<>();
+			Map<String, PredicateSymbol> predicates = new HashMap<>();
+			Proposition[] propositions = new Proposition[input.readInt()];
+			for (int i = 0; i < propositions.length; i++) {
+				int[] indices = readIndices(input);
+				String predicate = names[indices[0]];
+				if (!predicates.containsKey(predicate)) {
+					predicates.put(predicate, new PredicateSymbol(predicate));
+				}
+				propositions[i] = new Proposition(predicates.get(predicate));
+				for (int argument = 1; argument < indices.length; argument++) {
+					propositions[i].addParameter(getObject(objects, names[indices[argument]]));
+				}
+			}
+			Set<Action> actions = new LinkedHashSet<>();
+			int numActions = input.readInt();
+			for (int i = 0; i < numActions; i++) {
+				actions.add(readAction(readIndices(input), names, objects, propositions));
+			}
+			Set<Proposition> initial = new LinkedHashSet<>();
+			for (int index : readIndices(input)) {
+				initial.add(propositions[index]);
+			}
+			And goal = new And();
+			for (int index : readIndices(input)) {
+				goal.add(propositions[index]);
+			}
+			return new GroundProblem(actions, initial, goal, new HashMap<NamedFunction, BigDecimal>(), null);
+		} catch (EOFException | IndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param indices the name, the number of arguments, the arguments and
+	 *        then the number and indices of the precondition, add and delete
+	 *        propositions in turn
+	 */
+	private static Action readAction(int[] indices, String[] names, Map<String, PDDLObject> objects,
+			Proposition[] propositions) {
+		STRIPSInstantAction action = new STRIPSInstantAction();
+		action.name = new OperatorName(names[indices[0]]);
+		int next = 1;
+		int arguments = indices[next++];
+		for (int argument = 0; argument < arguments; argument++) {
+			action.params.add(getObject(objects, names[indices[next++]]));
+		}
+		And condition = new And();
+		int count = indices[next++];
+		for (int i = 0; i < count; i++) {
+			condition.add(propositions[indices[next++]]);
+		}
+		And effect = new And();
+		count = indices[next++];
+		for (int i = 0; i < count; i++) {
+			effect.add(propositions[indices[next++]]);
+		}
+		count = indices[next++];
+		for (int i = 0; i < count; i++) {
+			effect.add(new NotProposition(propositions[indices[next++]]));
+		}
+		action.condition = condition;
+		action.effect = effect;
+		return action;
+	}
+
+	private static PDDLObject getObject(Map<String, PDDLObject> objects, String name) {
+		PDDLObject object = objects.get(name);
+		if (object == null) {
+			object = new PDDLObject(name);
+			objects.put(name, object);
+		}
+		return object;
+	}
+
+	private static void writeIndices(DataOutputStream output, int[] indices) throws IOException {
+		output.writeInt(indices.length);
+		for (int index : indices) {
+			output.writeInt(index);
+		}
+	}
+
+	private static int[] readIndices(DataInputStream input) throws IOException {
+		int[] indices = new int[input.readInt()];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = input.readInt();
+		}
+		return indices;
+	}
+
+	/**
+	 * The names and propositions of a problem being written, each numbered
+	 * in the order first seen
+	 */
+	private static class Table {
+
+		private List<String> names = new ArrayList<>();
+		private Map<String, Integer> nameIndices = new HashMap<>();
+		private List<int[]> propositions = new ArrayList<>();
+		private Map<Proposition, Integer> propositionIndices = new HashMap<>();
+
+		public int[] addAction(Action action) {
+			List<Integer> indices = new ArrayList<>();
+			indices.add(addName(action.name.toString()));
+			indices.add(action.params.size());
+			for (Object argument : action.params) {
+				indices.add(addName(((Parameter) argument).getName()));
+			}
+			for (Collection<?> facts : new Collection<?>[] { action.getPreconditions(),
+					action.getAddPropositions(), action.getDeletePropositions() }) {
+				int[] factIndices = addPropositions(facts);
+				indices.add(factIndices.length);
+				for (int index : factIndices) {
+					indices.add(index);
+				}
+			}
+			int[] array = new int[indices.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = indices.get(i);
+			}
+			return array;
+		}
+
+		public int[] addPropositions(Collection<?> facts) {
+			int[] indices = new int[facts.size()];
+			int next = 0;
+			for (Object fact : facts) {
+				if (!(fact instanceof Proposition)) {
+					throw new IllegalArgumentException("Cannot write non-propositional fact " + fact);
+				}
+				indices[next++] = addProposition((Proposition) fact);
+			}
+			return indices;
+		}
+
+		private int addProposition(Proposition proposition) {
+			Integer index = propositionIndices.get(proposition);
+			if (index == null) {
+				List<?> arguments = proposition.getParameters();
+				int[] indices = new int[arguments.size() + 1];
+				indices[0] = addName(proposition.getPredicateSymbol().toString());
+				for (int i = 0; i < arguments.size(); i++) {
+					indices[i + 1] = addName(((Parameter) arguments.get(i)).getName());
+				}
+				index = propositions.size();
+				propositions.add(indices);
+				propositionIndices.put(proposition, index);
+			}
+			return index;
+		}
+
+		private int addName(String name) {
+			Integer index = nameIndices.get(name);
+			if (index == null) {
+				index = names.size();
+				names.add(name);
+				nameIndices.put(name, index);
+			}
+			return index;
+		}
+	}
+}
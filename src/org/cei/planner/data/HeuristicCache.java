@@ -0,0 +1,42 @@
+package org.cei.planner.data;
+
+import org.cei.planner.util.BoundedCache;
+import org.cei.planner.util.EvictionPolicyEnum;
+
+/**
+ * Maps states, JavaFF or compiled, to their heuristic value so that a state
+ * reached by several walks, restarts or trees is only evaluated once. The
+ * least recently used states are evicted once the cache is full.
+ */
+public class HeuristicCache {
+
+	private BoundedCache<Object, Double> values = null;
+
+	public HeuristicCache(int capacity) {
+		this.values = new BoundedCache<>(capacity, EvictionPolicyEnum.LRU);
+	}
+
+	/**
+	 * @param key the JavaFF or compiled state
+	 * @return the heuristic value, or null if the state is not held
+	 */
+	public Double get(Object key) {
+		return values.get(key);
+	}
+
+	public void put(Object key, double value) {
+		values.put(key, Double.valueOf(value));
+	}
+
+	public void clear() {
+		values.clear();
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	public int getCapacity() {
+		return values.getCapacity();
+	}
+}
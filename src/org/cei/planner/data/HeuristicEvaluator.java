@@ -0,0 +1,55 @@
+package org.cei.planner.data;
+
+import javaff.data.Action;
+import javaff.data.GroundProblem;
+import javaff.planning.State;
+
+/**
+ * Evaluates heuristic values on JavaFF states of its own. JavaFF states
+ * share the relaxed planning graph of the initial state they were reached
+ * from, so states of one search cannot be evaluated at the same time. An
+ * evaluator builds its own initial state, and with it a graph of its own,
+ * and evaluates a state by replaying the plan that reached it. Each worker
+ * of a search holds its own evaluator so that workers evaluate in parallel.
+ * An evaluator is not thread safe.
+ */
+public class HeuristicEvaluator {
+
+	private GroundProblem problem = null;
+	private boolean metricStates = false;
+	// Built on first use, so evaluators that are never bound cost nothing
+	private State initialState = null;
+
+	/**
+	 * @param problem
+	 * @param metricStates whether the search is on metric states rather than
+	 *        STRIPS states
+	 */
+	public HeuristicEvaluator(GroundProblem problem, boolean metricStates) {
+		this.problem = problem;
+		this.metricStates = metricStates;
+	}
+
+	/**
+	 * An evaluator of the same problem with a relaxed planning graph of its
+	 * own
+	 */
+	public HeuristicEvaluator copy() {
+		return new HeuristicEvaluator(problem, metricStates);
+	}
+
+	/**
+	 * @param state reached from the initial state of the problem
+	 */
+	public double getHValue(State state) {
+		if (initialState == null) {
+			initialState = metricStates ? problem.getMetricInitialState()
+					: problem.getSTRIPSInitialState();
+		}
+		State evaluated = initialState;
+		for (Object action : state.getSolution().getActions()) {
+			evaluated = evaluated.apply((Action) action);
+		}
+		return evaluated.getHValue().doubleValue();
+	}
+}
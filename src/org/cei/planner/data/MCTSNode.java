@@ -1,32 +1,72 @@
 package org.cei.planner.data;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javaff.data.Action;
 import javaff.planning.Filter;
 import javaff.planning.NullFilter;
 import javaff.planning.State;
 
+import org.cei.planner.metrics.SearchMetrics;
+
+/**
+ * A node of the search tree. Node statistics are updated atomically so a
+ * single tree can be shared by several search workers.
+ * 
+ * When the search context holds a compiled problem, nodes below the root
+ * are generated on bit states and only build the JavaFF state, by applying
+ * their action to the state of their parent, when it is asked for.
+ * 
+ * Expansion is lazy: expanding a node only records its applicable actions,
+ * one slot each, and the successor of a slot is created the first time it
+ * is asked for.
+ */
 public class MCTSNode implements Comparable<MCTSNode> {
 
-	private static int NODE_COUNT = 0;
+	private static final AtomicIntegerFieldUpdater<MCTSNode> VISIT_COUNT = AtomicIntegerFieldUpdater
+			.newUpdater(MCTSNode.class, "visitCount");
+	private static final AtomicIntegerFieldUpdater<MCTSNode> SELECTED_COUNT = AtomicIntegerFieldUpdater
+			.newUpdater(MCTSNode.class, "selectedCount");
+	private static final AtomicIntegerFieldUpdater<MCTSNode> VIRTUAL_LOSS = AtomicIntegerFieldUpdater
+			.newUpdater(MCTSNode.class, "virtualLoss");
+	private static final AtomicLongFieldUpdater<MCTSNode> VALUE = AtomicLongFieldUpdater
+			.newUpdater(MCTSNode.class, "value");
 
-	private State state = null;
+	private volatile State state = null;
+	private BitState bitState = null;
+	// Index of the compiled action that generated this node
+	private int action = -1;
+	// Compiled actions that generated this node from its parent, when more
+	// than one
+	private int[] actions = null;
 	private StateValuePolicyEnum stateValuePolicy = null;
 	private MCTSNode parent = null;
-	private Map<MCTSNode, Integer> successors = null;
-	private Map<MCTSNode, Double> successor_QValues = null;
-	private double value = 0.0;
+	private SearchContext context = null;
+	private volatile Successors successors = null;
+	private volatile double hValue = Double.NaN;
+	// Statistics of the successors last evicted, restored on expansion
+	private EvictedSuccessors evicted = null;
+	// Double bits of the node value
+	private volatile long value = Double.doubleToRawLongBits(0.0);
 	private Filter filter = NullFilter.getInstance();
-	private int visitCount = 0;
-	private int selectedCount = 0;
+	private volatile int visitCount = 0;
+	private volatile int selectedCount = 0;
+	// Number of simulations currently in flight below this node
+	private volatile int virtualLoss = 0;
+	// Tick of the node budget when a simulation last passed through
+	private volatile long lastTouched = 0;
 
 	private MCTSNode() {
-		NODE_COUNT++;
 	}
 
 	/**
@@ -40,13 +80,89 @@ public class MCTSNode implements Comparable<MCTSNode> {
 		this.stateValuePolicy = stateValuePolicy;
 	}
 
+	/**
+	 * Root node constructor
+	 * @param state
+	 * @param stateValuePolicyEnum
+	 * @param context shared by all nodes of the search
+	 */
+	public MCTSNode(State state, StateValuePolicyEnum stateValuePolicy, SearchContext context) {
+		this(state, stateValuePolicy);
+		this.context = context;
+		nodeCreated();
+	}
+
+	/**
+	 * Root node constructor for a compiled search
+	 * @param state
+	 * @param bitState the compiled form of the state
+	 * @param stateValuePolicyEnum
+	 * @param context holding the compiled problem
+	 */
+	public MCTSNode(State state, BitState bitState, StateValuePolicyEnum stateValuePolicy, SearchContext context) {
+		this(state, stateValuePolicy, context);
+		this.bitState = bitState;
+	}
+
 	public MCTSNode(State state, MCTSNode parent, StateValuePolicyEnum stateValuePolicyEnum) {
 		this(state, stateValuePolicyEnum);
 		this.parent = parent;
+		this.context = parent.context;
+		nodeCreated();
+	}
+
+	/**
+	 * Compiled successor constructor
+	 * @param bitState
+	 * @param parent
+	 * @param action the compiled action applied to the parent
+	 * @param stateValuePolicyEnum
+	 */
+	public MCTSNode(BitState bitState, MCTSNode parent, int action, StateValuePolicyEnum stateValuePolicyEnum) {
+		this();
+		this.bitState = bitState;
+		this.parent = parent;
+		this.action = action;
+		this.stateValuePolicy = stateValuePolicyEnum;
+		this.context = parent.context;
+		nodeCreated();
+	}
+
+	/**
+	 * Compiled constructor for a node reached from an ancestor by a sequence
+	 * of compiled actions, such as the end of a rollout. The ancestor becomes
+	 * the parent of the node.
+	 * @param bitState
+	 * @param ancestor
+	 * @param actions the compiled actions applied to the ancestor, in order
+	 * @param stateValuePolicyEnum
+	 */
+	public MCTSNode(BitState bitState, MCTSNode ancestor, int[] actions, StateValuePolicyEnum stateValuePolicyEnum) {
+		this();
+		this.bitState = bitState;
+		this.parent = ancestor;
+		this.actions = actions;
+		this.stateValuePolicy = stateValuePolicyEnum;
+		this.context = ancestor.context;
+		nodeCreated();
+	}
+
+	private void nodeCreated() {
+		SearchMetrics metrics = getMetrics();
+		if (metrics != null) {
+			metrics.nodeCreated();
+		}
 	}
 	
 	public void visited() {
-		visitCount++;
+		VISIT_COUNT.incrementAndGet(this);
+	}
+
+	/**
+	 * Adds visits made elsewhere, such as in another tree of the same state
+	 */
+	public void addVisits(int visits) {
+		VISIT_COUNT.addAndGet(this, visits);
 	}
 
 	public int getVisits() {
@@ -54,32 +170,89 @@ public class MCTSNode implements Comparable<MCTSNode> {
 	}
 	
 	public void selected() {
-		selectedCount++;
+		SELECTED_COUNT.incrementAndGet(this);
 	}
-	
-	@Override
-	protected void finalize() {
-		NODE_COUNT--;
+
+	/**
+	 * Marks a simulation as passing through this node so that other workers
+	 * sharing the tree are steered elsewhere until it is backed up.
+	 */
+	public void addVirtualLoss() {
+		VIRTUAL_LOSS.incrementAndGet(this);
+	}
+
+	public void removeVirtualLoss() {
+		VIRTUAL_LOSS.decrementAndGet(this);
+	}
+
+	public int getVirtualLoss() {
+		return virtualLoss;
+	}
+
+	public void touch(long tick) {
+		lastTouched = tick;
 	}
 
-	public static int getNodeCount() {
-		return NODE_COUNT;
+	public long getLastTouched() {
+		return lastTouched;
 	}
 
+	/**
+	 * The node this node was first generated from. When states are shared
+	 * through a transposition table a node may also be the successor of
+	 * other nodes.
+	 */
 	public MCTSNode getParent() {
 		return parent;
 	}
 
+	/**
+	 * Makes this node the root of its own tree. Its state is materialised
+	 * first as a compiled node otherwise builds it from its ancestors.
+	 */
+	public void detach() {
+		getState();
+		parent = null;
+	}
+
+	public SearchContext getContext() {
+		return context;
+	}
+
+	/**
+	 * The metrics of the search, or null if it is not measured
+	 */
+	public SearchMetrics getMetrics() {
+		return (context == null) ? null : context.getMetrics();
+	}
+
 	public void setValue(double value) {
-		this.value = value;
+		VALUE.set(this, Double.doubleToRawLongBits(value));
 	}
 
 	public double getValue() {
-		return value;
+		return Double.longBitsToDouble(value);
+	}
+
+	/**
+	 * Atomically moves the value of this node towards the target value
+	 * @param target
+	 * @param learningRate
+	 */
+	public void updateValue(double target, double learningRate) {
+		long current;
+		long updated;
+		do {
+			current = value;
+			double currentValue = Double.longBitsToDouble(current);
+			updated = Double.doubleToRawLongBits(currentValue
+					+ (learningRate * (target - currentValue)));
+		} while (!VALUE.compareAndSet(this, current, updated));
 	}
 
 	public double getQValue() {
 		double qValue = 0.0;
+		int selectedCount = this.selectedCount;
 		int notSelected = visitCount - selectedCount;
 		if ((notSelected + selectedCount) == 0) {
 			qValue = 0.0;
@@ -89,55 +262,326 @@ public class MCTSNode implements Comparable<MCTSNode> {
 		return qValue;
 	}
 	
+	/**
+	 * The heuristic value of the state, evaluated on first use unless the
+	 * heuristic cache of the search already holds it. A thread bound to an
+	 * evaluator of its own evaluates with it. Any other evaluation is
+	 * serialised through the lock of the search, as the states of a problem
+	 * share one relaxed planning graph.
+	 */
 	public double getHValue() {
-		return state.getHValue().doubleValue();
+		double hValue = this.hValue;
+		if (Double.isNaN(hValue)) {
+			HeuristicCache heuristicCache = (context == null) ? null
+					: context.getHeuristicCache();
+			SearchMetrics metrics = getMetrics();
+			Double cached = (heuristicCache == null) ? null : heuristicCache.get(getKey());
+			if (cached != null) {
+				hValue = cached.doubleValue();
+				if (metrics != null) {
+					metrics.heuristicCacheHit();
+				}
+			} else {
+				HeuristicEvaluator evaluator = (context == null) ? null : context.getWorkerEvaluator();
+				if (evaluator != null) {
+					hValue = evaluator.getHValue(getState());
+				} else {
+					Object lock = (context == null) ? MCTSNode.class : context.getHeuristicLock();
+					synchronized (lock) {
+						hValue = getState().getHValue().doubleValue();
+					}
+				}
+				if (heuristicCache != null) {
+					heuristicCache.put(getKey(), hValue);
+				}
+				if (metrics != null) {
+					metrics.heuristicEvaluated();
+				}
+			}
+			this.hValue = hValue;
+		}
+		return hValue;
 	}
 
 	public State getState() {
+		State state = this.state;
+		if (state == null) {
+			CompiledProblem problem = context.getCompiledProblem();
+			state = parent.getState();
+			if (actions == null) {
+				state = state.apply(problem.getAction(action));
+			} else {
+				for (int action : actions) {
+					state = state.apply(problem.getAction(action));
+				}
+			}
+			this.state = state;
+		}
+		return state;
+	}
+
+	/**
+	 * The compiled state, or null if the search is not compiled
+	 */
+	public BitState getBitState() {
+		return bitState;
+	}
+
+	public boolean isCompiled() {
+		return bitState != null;
+	}
+
+	/**
+	 * The object that identifies the state of this node: the compiled state
+	 * if there is one, otherwise the JavaFF state
+	 */
+	public Object getKey() {
+		if (bitState != null) {
+			return bitState;
+		}
 		return state;
 	}
 	
 	public List<Action> getActions() {
+		if (bitState != null) {
+			CompiledProblem problem = context.getCompiledProblem();
+			int[] applicable = new int[problem.getNumActions()];
+			int count = problem.getApplicableActions(bitState, applicable);
+			List<Action> actions = new ArrayList<Action>(count);
+			for (int i = 0; i < count; i++) {
+				actions.add(problem.getAction(applicable[i]));
+			}
+			return actions;
+		}
 		return new ArrayList<Action>(filter.getActions(state));
 	}
 
-	public Map<MCTSNode, Integer> getSuccessors() {
-		if (successors == null) {
-			generateSuccessors();
+	/**
+	 * The number of successors, expanding the node if needed. Successors are
+	 * addressed by slot, from zero up to this count, one slot for each
+	 * applicable action.
+	 */
+	public int getSuccessorCount() {
+		return getSuccessors().length();
+	}
+
+	/**
+	 * The successor in the slot, creating it if this is the first time it
+	 * has been asked for
+	 */
+	public MCTSNode getSuccessor(int slot) {
+		Successors successors = getSuccessors();
+		MCTSNode successor = successors.nodes.get(slot);
+		if (successor == null) {
+			successor = createSuccessor(successors, slot);
 		}
-		return successors;
+		return successor;
+	}
+
+	/**
+	 * The successor in the slot, or null if it has not been created
+	 */
+	public MCTSNode getCreatedSuccessor(int slot) {
+		return getSuccessors().nodes.get(slot);
+	}
+
+	/**
+	 * Every successor of this node, creating those that have not been
+	 * created yet
+	 */
+	public List<MCTSNode> getSuccessorNodes() {
+		int count = getSuccessorCount();
+		List<MCTSNode> nodes = new ArrayList<>(count);
+		for (int slot = 0; slot < count; slot++) {
+			nodes.add(getSuccessor(slot));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Number of times the successor has been selected from this node, n(s,a)
+	 */
+	public int getSuccessorVisits(int slot) {
+		return getSuccessors().visits.get(slot);
+	}
+
+	public void setSuccessorVisits(int slot, int visits) {
+		getSuccessors().visits.set(slot, visits);
+	}
+
+	/**
+	 * Increments the number of times the successor has been selected from
+	 * this node
+	 */
+	public void visited(int slot) {
+		getSuccessors().visits.incrementAndGet(slot);
+	}
+
+	public double getSuccessorQValue(int slot) {
+		return Double.longBitsToDouble(getSuccessors().qValues.get(slot));
+	}
+
+	public void setSuccessorQValue(int slot, double qValue) {
+		getSuccessors().qValues.set(slot, Double.doubleToRawLongBits(qValue));
+	}
+
+	/**
+	 * Atomically adds to the Q-value of the successor
+	 * @return the updated Q-value
+	 */
+	public double addSuccessorQValue(int slot, double delta) {
+		AtomicLongArray qValues = getSuccessors().qValues;
+		long current;
+		double updated;
+		do {
+			current = qValues.get(slot);
+			updated = Double.longBitsToDouble(current) + delta;
+		} while (!qValues.compareAndSet(slot, current, Double.doubleToRawLongBits(updated)));
+		return updated;
+	}
+
+	/**
+	 * The number of nodes in the expanded tree below this node, including
+	 * it. Nodes shared through the transposition table are counted once.
+	 */
+	public int countTreeNodes() {
+		Set<MCTSNode> seen = Collections.newSetFromMap(new IdentityHashMap<MCTSNode, Boolean>());
+		List<MCTSNode> open = new ArrayList<>();
+		open.add(this);
+		seen.add(this);
+		while (!open.isEmpty()) {
+			MCTSNode node = open.remove(open.size() - 1);
+			Successors successors = node.successors;
+			if (successors == null) {
+				continue;
+			}
+			for (int slot = 0; slot < successors.length(); slot++) {
+				MCTSNode successor = successors.nodes.get(slot);
+				if ((successor != null) && seen.add(successor)) {
+					open.add(successor);
+				}
+			}
+		}
+		return seen.size();
+	}
+
+	/**
+	 * Whether the successors of this node have been generated
+	 */
+	public boolean isExpanded() {
+		return successors != null;
 	}
 
-	public Map<MCTSNode, Double> getSuccessorQValues() {
-		if (successor_QValues == null) {
-			generateSuccessors();
+	private Successors getSuccessors() {
+		Successors successors = this.successors;
+		if (successors == null) {
+			successors = generateSuccessors();
 		}
-		return successor_QValues;
+		return successors;
 	}
 
-	public void visited(MCTSNode node) {
-		if (successors.containsKey(node)) {
-			Integer visitCount = successors.get(node) + 1;
-			successors.put(node, visitCount);
+	/**
+	 * Expands this node, recording the actions applicable in its state
+	 * without creating any successor. Workers that race to expand the same
+	 * node wait for the first one, so the actions are only found once.
+	 */
+	private synchronized Successors generateSuccessors() {
+		if (successors != null) {
+			return successors;
+		}
+		Successors successors = null;
+		if (bitState != null) {
+			CompiledProblem problem = context.getCompiledProblem();
+			int[] applicable = new int[problem.getNumActions()];
+			int count = problem.getApplicableActions(bitState, applicable);
+			successors = new Successors(Arrays.copyOf(applicable, count), null, evicted);
+		} else {
+			Set<Action> stateActions = filter.getActions(state);
+			successors = new Successors(null, stateActions.toArray(new Action[stateActions.size()]), evicted);
 		}
+		SearchMetrics metrics = getMetrics();
+		if (metrics != null) {
+			metrics.expanded(0);
+		}
+		this.evicted = null;
+		this.successors = successors;
+		return successors;
 	}
 
-	private void generateSuccessors() {
-		Set<State> nextStates = state.getNextStates(filter.getActions(state));
-		successors = new HashMap<>();
-		successor_QValues = new HashMap<>();
-		for (State nextState : nextStates) {
-			MCTSNode successor = new MCTSNode(nextState, this, stateValuePolicy);
-			successors.put(successor, Integer.valueOf(0));
-			successor_QValues.put(successor, Double.valueOf(0.0));
+	/**
+	 * Creates the successor in the slot, unless another worker already has.
+	 * A successor state already in the transposition table reuses the
+	 * existing node.
+	 */
+	private synchronized MCTSNode createSuccessor(Successors successors, int slot) {
+		MCTSNode successor = successors.nodes.get(slot);
+		if (successor != null) {
+			return successor;
+		}
+		TranspositionTable transpositionTable = (context == null) ? null
+				: context.getTranspositionTable();
+		MCTSNode node = null;
+		if (bitState != null) {
+			BitState nextState = context.getCompiledProblem().apply(bitState, successors.actions[slot]);
+			if (transpositionTable != null) {
+				successor = transpositionTable.get(nextState);
+			}
+			if (successor == null) {
+				node = new MCTSNode(nextState, this, successors.actions[slot], stateValuePolicy);
+			}
+		} else {
+			State nextState = state.apply(successors.stateActions[slot]);
+			if (transpositionTable != null) {
+				successor = transpositionTable.get(nextState);
+			}
+			if (successor == null) {
+				node = new MCTSNode(nextState, this, stateValuePolicy);
+			}
+		}
+		if (node != null) {
+			successor = (transpositionTable == null) ? node : transpositionTable.putIfAbsent(node);
 		}
+		if (successor == node) {
+			// Slots are in the same order every time the node is expanded, so
+			// the value of an evicted successor can be restored by slot
+			if ((successors.evictedValues != null) && !Double.isNaN(successors.evictedValues[slot])) {
+				successor.setValue(successors.evictedValues[slot]);
+			}
+			NodeBudget budget = (context == null) ? null : context.getNodeBudget();
+			if (budget != null) {
+				budget.added(1);
+			}
+			SearchMetrics metrics = getMetrics();
+			if (metrics != null) {
+				metrics.successorsCreated(1);
+			}
+		}
+		successors.nodes.set(slot, successor);
+		return successor;
 	}
 	
-	public void clearSuccesors() {
+	public synchronized void clearSuccesors() {
 		successors = null;
 	}
 
+	/**
+	 * Releases the successors of this node and everything held only through
+	 * them. Their visit counts, Q-values and values are kept on this node and
+	 * restored if it is expanded again.
+	 */
+	public synchronized void evict() {
+		Successors successors = this.successors;
+		if (successors == null) {
+			return;
+		}
+		this.evicted = new EvictedSuccessors(successors);
+		this.successors = null;
+	}
+
 	public boolean isTerminal() {
+		if (bitState != null) {
+			return isGoal() || !context.getCompiledProblem().hasApplicableAction(bitState);
+		}
 		if (state.getActions().isEmpty() || isGoal()) {
 			return true;
 		}
@@ -145,14 +589,19 @@ public class MCTSNode implements Comparable<MCTSNode> {
 	}
 
 	public boolean isGoal() {
+		if (bitState != null) {
+			return context.getCompiledProblem().isGoal(bitState);
+		}
 		return state.goalReached();
 	}
 
 	@Override
 	public int compareTo(MCTSNode other) {
-		if (value > other.value) {
+		double value = getValue();
+		double otherValue = other.getValue();
+		if (value > otherValue) {
 			return -1;
-		} else if (value < other.value) {
+		} else if (value < otherValue) {
 			return 1;
 		}
 		return 0;
@@ -162,13 +611,74 @@ public class MCTSNode implements Comparable<MCTSNode> {
 	public boolean equals(Object other) {
 		if (other instanceof MCTSNode) {
 			MCTSNode otherNode = (MCTSNode)other;
-			return this.state.equals(otherNode.state);
+			return this.getKey().equals(otherNode.getKey());
 		}
 		return false;
 	}
 	
 	@Override
 	public int hashCode() {
-		return this.state.hashCode();
+		return this.getKey().hashCode();
+	}
+
+	/**
+	 * The successors of a node with their statistics held in arrays
+	 * parallel to them, indexed by slot. Each slot holds an applicable
+	 * action, and its node once created. Kept together so that a node can
+	 * swap all of them at once.
+	 */
+	private static final class Successors {
+
+		private final AtomicReferenceArray<MCTSNode> nodes;
+		// Compiled action of each slot, or null if the node is not compiled
+		private final int[] actions;
+		// JavaFF action of each slot, or null if the node is compiled
+		private final Action[] stateActions;
+		private final AtomicIntegerArray visits;
+		// Double bits of the Q-values
+		private final AtomicLongArray qValues;
+		// Values of evicted successors, NaN where none was created, or null
+		private final double[] evictedValues;
+
+		private Successors(int[] actions, Action[] stateActions, EvictedSuccessors evicted) {
+			this.actions = actions;
+			this.stateActions = stateActions;
+			int length = (actions != null) ? actions.length : stateActions.length;
+			this.nodes = new AtomicReferenceArray<>(length);
+			if ((evicted != null) && (evicted.values.length == length)) {
+				this.visits = evicted.visits;
+				this.qValues = evicted.qValues;
+				this.evictedValues = evicted.values;
+			} else {
+				this.visits = new AtomicIntegerArray(length);
+				this.qValues = new AtomicLongArray(length);
+				this.evictedValues = null;
+			}
+		}
+
+		private int length() {
+			return nodes.length();
+		}
+	}
+
+	/**
+	 * The statistics of successors that have been evicted, without the
+	 * successor nodes themselves
+	 */
+	private static final class EvictedSuccessors {
+
+		private final AtomicIntegerArray visits;
+		private final AtomicLongArray qValues;
+		private final double[] values;
+
+		private EvictedSuccessors(Successors successors) {
+			this.visits = successors.visits;
+			this.qValues = successors.qValues;
+			this.values = new double[successors.length()];
+			for (int slot = 0; slot < values.length; slot++) {
+				MCTSNode successor = successors.nodes.get(slot);
+				values[slot] = (successor == null) ? Double.NaN : successor.getValue();
+			}
+		}
 	}
 }
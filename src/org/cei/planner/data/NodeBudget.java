@@ -0,0 +1,207 @@
+package org.cei.planner.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cei.planner.util.NodeEvictionPolicyEnum;
+
+/**
+ * Bounds the number of nodes held in a search tree. Expansions count the
+ * nodes they create, and once the budget is exceeded cold subtrees are
+ * evicted until the tree is back under a low water mark. The root of an
+ * evicted subtree keeps its statistics so it can be expanded again later.
+ * The nodes below it are also dropped from the transposition table, so that
+ * expanding it again cannot bring them back uncounted.
+ */
+public class NodeBudget {
+
+	private static final double LOW_WATER_MARK = 0.75;
+
+	private long maxNodes = 0;
+	private NodeEvictionPolicyEnum evictionPolicy = null;
+	private AtomicLong nodes = new AtomicLong();
+	private AtomicLong clock = new AtomicLong();
+	private AtomicBoolean evicting = new AtomicBoolean();
+
+	public NodeBudget(long maxNodes, NodeEvictionPolicyEnum evictionPolicy) {
+		if (maxNodes < 1) {
+			throw new IllegalArgumentException("Node budget must be at least 1");
+		}
+		this.maxNodes = maxNodes;
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	public void added(int count) {
+		nodes.addAndGet(count);
+	}
+
+	/**
+	 * The number of nodes counted in the tree. Nodes released other than by
+	 * eviction are only discounted at the next eviction.
+	 */
+	public long getNodes() {
+		return nodes.get();
+	}
+
+	/**
+	 * Replaces the count of nodes in the tree, once it has been counted
+	 * afresh
+	 */
+	public void setNodes(long nodes) {
+		this.nodes.set(nodes);
+	}
+
+	public long getMaxNodes() {
+		return maxNodes;
+	}
+
+	public NodeEvictionPolicyEnum getEvictionPolicy() {
+		return evictionPolicy;
+	}
+
+	public boolean isExceeded() {
+		return nodes.get() > maxNodes;
+	}
+
+	/**
+	 * Advances the clock used to stamp the nodes a simulation passes through
+	 * @return the new tick
+	 */
+	public long tick() {
+		return clock.incrementAndGet();
+	}
+
+	/**
+	 * Evicts cold subtrees below the root until the tree is back under the
+	 * low water mark. Only one thread evicts at a time; any other returns
+	 * straight away.
+	 * @return the number of nodes evicted
+	 */
+	public long evict(MCTSNode root) {
+		if (!evicting.compareAndSet(false, true)) {
+			return 0;
+		}
+		try {
+			return evictSubtrees(root);
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private long evictSubtrees(MCTSNode root) {
+		long counted = nodes.get();
+		// Walk the expanded tree breadth first. A node shared through the
+		// transposition table belongs to the subtree it is first reached in.
+		List<MCTSNode> order = new ArrayList<>();
+		Map<MCTSNode, Boolean> seen = new IdentityHashMap<>();
+		int[] treeParents = new int[16];
+		order.add(root);
+		seen.put(root, Boolean.TRUE);
+		for (int i = 0; i < order.size(); i++) {
+			MCTSNode node = order.get(i);
+			if (!node.isExpanded()) {
+				continue;
+			}
+			for (int slot = 0; slot < node.getSuccessorCount(); slot++) {
+				MCTSNode successor = node.getCreatedSuccessor(slot);
+				if ((successor != null) && (seen.put(successor, Boolean.TRUE) == null)) {
+					if (order.size() == treeParents.length) {
+						treeParents = Arrays.copyOf(treeParents, treeParents.length * 2);
+					}
+					treeParents[order.size()] = i;
+					order.add(successor);
+				}
+			}
+		}
+		seen = null;
+		int size = order.size();
+		int[] subtreeSizes = new int[size];
+		for (int i = size - 1; i >= 0; i--) {
+			subtreeSizes[i]++;
+			if (i > 0) {
+				subtreeSizes[treeParents[i]] += subtreeSizes[i];
+			}
+		}
+		long[] candidates = rankCandidates(order);
+		boolean[] evicted = new boolean[size];
+		long target = (long) (maxNodes * LOW_WATER_MARK);
+		long remaining = size;
+		for (int c = 0; (c < candidates.length) && (remaining > target); c++) {
+			int index = (int) candidates[c];
+			if (hasEvictedAncestor(index, treeParents, evicted)) {
+				continue;
+			}
+			order.get(index).evict();
+			evicted[index] = true;
+			remaining -= subtreeSizes[index] - 1;
+		}
+		releaseTranspositions(root, order, treeParents, evicted);
+		// Keep the nodes added by other workers during the walk
+		nodes.addAndGet(remaining - counted);
+		return size - remaining;
+	}
+
+	/**
+	 * Orders the expanded nodes below the root, excluding those with
+	 * simulations in flight, coldest first. Each entry holds the rank key in
+	 * the upper half and the index of the node in the lower half.
+	 */
+	private long[] rankCandidates(List<MCTSNode> order) {
+		long[] candidates = new long[order.size()];
+		int count = 0;
+		long oldest = clock.get() - Integer.MAX_VALUE;
+		for (int i = 1; i < order.size(); i++) {
+			MCTSNode node = order.get(i);
+			if (!node.isExpanded() || (node.getVirtualLoss() > 0)) {
+				continue;
+			}
+			long key = 0;
+			if (evictionPolicy == NodeEvictionPolicyEnum.LRU) {
+				key = Math.max(0, node.getLastTouched() - oldest);
+			} else {
+				key = node.getVisits();
+			}
+			candidates[count++] = (key << 32) | i;
+		}
+		candidates = Arrays.copyOf(candidates, count);
+		Arrays.sort(candidates);
+		return candidates;
+	}
+
+	/**
+	 * Removes the nodes below the evicted nodes from the transposition
+	 * table. Parents come before their successors in the walk, so one pass
+	 * marks every such node.
+	 */
+	private void releaseTranspositions(MCTSNode root, List<MCTSNode> order, int[] treeParents,
+			boolean[] evicted) {
+		TranspositionTable transpositionTable = (root.getContext() == null) ? null
+				: root.getContext().getTranspositionTable();
+		if (transpositionTable == null) {
+			return;
+		}
+		boolean[] released = new boolean[order.size()];
+		for (int i = 1; i < order.size(); i++) {
+			int parent = treeParents[i];
+			released[i] = evicted[parent] || released[parent];
+			if (released[i]) {
+				transpositionTable.remove(order.get(i));
+			}
+		}
+	}
+
+	private boolean hasEvictedAncestor(int index, int[] treeParents, boolean[] evicted) {
+		while (index > 0) {
+			index = treeParents[index];
+			if (evicted[index]) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
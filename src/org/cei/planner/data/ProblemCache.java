@@ -0,0 +1,236 @@
+package org.cei.planner.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javaff.data.GroundProblem;
+import javaff.data.UngroundProblem;
+import javaff.parser.PDDL21parser;
+
+import org.cei.planner.util.BoundedCache;
+import org.cei.planner.util.EvictionPolicyEnum;
+
+/**
+ * Ground problems keyed by a hash of the content of their domain and
+ * problem files, so that a problem solved again is neither parsed nor
+ * grounded again. The most recently used problems are held in memory, each
+ * with its compiled form once a planner asks for it.
+ *
+ * Given a directory, problems are also kept there, ground problems in the
+ * form of {@link GroundProblemFile} and compiled problems in the binary
+ * form of {@link CompiledProblem}. A restarted process rebuilds the ground
+ * problem and maps in the compiled problem rather than parsing, grounding
+ * and compiling again. Problems that cannot be written, such as those with
+ * a metric, are still parsed and grounded once by a restarted process.
+ */
+public class ProblemCache {
+
+	public static final int DEFAULT_CAPACITY = 16;
+
+	private static final String FILE_EXTENSION = ".mctp";
+	private static final String GROUND_FILE_EXTENSION = ".mctg";
+	private static final Logger LOG = Logger.getLogger(ProblemCache.class.getName());
+	// The JavaFF parser builds into static fields, so only one problem may
+	// be parsed and grounded at a time, whichever cache it is for
+	private static final Object PARSER_LOCK = new Object();
+
+	private BoundedCache<String, Entry> problems = null;
+	// The key of every ground problem handed out and still in use
+	private Map<GroundProblem, String> keys = Collections
+			.synchronizedMap(new WeakHashMap<GroundProblem, String>());
+	private File directory = null;
+	private AtomicInteger problemsParsed = new AtomicInteger();
+
+	public ProblemCache(int capacity) {
+		this.problems = new BoundedCache<>(capacity, EvictionPolicyEnum.LRU);
+	}
+
+	/**
+	 * @param capacity
+	 * @param directory to keep compiled problems in, created if missing
+	 */
+	public ProblemCache(int capacity, File directory) {
+		this(capacity);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create cache directory " + directory);
+		}
+		this.directory = directory;
+	}
+
+	/**
+	 * The ground problem of the files, parsed and grounded only if the
+	 * same content is neither held nor kept in the directory of the cache.
+	 * Callers share the problem, so must not modify it. Problems are parsed and grounded one at a time; a
+	 * caller waiting for another parsing the same content receives its
+	 * problem.
+	 * @throws IOException if the files cannot be read or parsed
+	 */
+	public GroundProblem getGroundProblem(File domain, File problem) throws IOException {
+		String key = hash(domain, problem);
+		Entry entry = problems.get(key);
+		if (entry != null) {
+			return entry.groundProblem;
+		}
+		synchronized (PARSER_LOCK) {
+			entry = problems.get(key);
+			if (entry == null) {
+				entry = problems.putIfAbsent(key, new Entry(key, loadOrGround(key, domain, problem)));
+				keys.put(entry.groundProblem, key);
+			}
+		}
+		return entry.groundProblem;
+	}
+
+	/**
+	 * The number of problems this cache has parsed and grounded rather than
+	 * found in memory or in its directory
+	 */
+	public int getProblemsParsed() {
+		return problemsParsed.get();
+	}
+
+	/**
+	 * The compiled form of a ground problem. For problems from this cache
+	 * it is read from disk or compiled once and then kept while the problem
+	 * is held in memory; other problems are compiled on every call.
+	 * @throws IllegalArgumentException if the problem cannot be compiled
+	 */
+	public CompiledProblem getCompiledProblem(GroundProblem problem) {
+		String key = keys.get(problem);
+		if (key == null) {
+			return new CompiledProblem(problem);
+		}
+		Entry entry = problems.get(key);
+		if ((entry == null) || (entry.groundProblem != problem)) {
+			// Evicted since it was handed out
+			entry = new Entry(key, problem);
+		}
+		synchronized (entry) {
+			if (entry.notCompiled != null) {
+				throw new IllegalArgumentException(entry.notCompiled);
+			}
+			if (entry.compiledProblem == null) {
+				try {
+					entry.compiledProblem = loadOrCompile(entry);
+				} catch (IllegalArgumentException e) {
+					entry.notCompiled = e.getMessage();
+					throw e;
+				}
+			}
+			return entry.compiledProblem;
+		}
+	}
+
+	public int size() {
+		return problems.size();
+	}
+
+	public void clear() {
+		problems.clear();
+		keys.clear();
+	}
+
+	private GroundProblem loadOrGround(String key, File domain, File problem) throws IOException {
+		File file = (directory == null) ? null : new File(directory, key + GROUND_FILE_EXTENSION);
+		if ((file != null) && file.isFile()) {
+			try {
+				GroundProblem groundProblem = GroundProblemFile.read(file);
+				if (groundProblem != null) {
+					LOG.fine("Ground problem read from " + file);
+					return groundProblem;
+				}
+				LOG.info("Ground problem " + file + " is not readable. Parsing again.");
+			} catch (IOException e) {
+				LOG.warning("Ground problem could not be read from " + file + ". " + e.getMessage());
+			}
+		}
+		UngroundProblem ungroundProblem = PDDL21parser.parseFiles(domain, problem);
+		if (ungroundProblem == null) {
+			throw new IOException("Could not parse " + domain + " and " + problem);
+		}
+		GroundProblem groundProblem = ungroundProblem.ground();
+		problemsParsed.incrementAndGet();
+		if (file != null) {
+			try {
+				GroundProblemFile.write(groundProblem, file);
+			} catch (IllegalArgumentException e) {
+				LOG.fine("Ground problem is not kept in " + directory + ". " + e.getMessage());
+			} catch (IOException e) {
+				LOG.warning("Ground problem could not be written to " + file + ". " + e.getMessage());
+			}
+		}
+		return groundProblem;
+	}
+
+	private CompiledProblem loadOrCompile(Entry entry) {
+		File file = (directory == null) ? null : new File(directory, entry.key + FILE_EXTENSION);
+		if ((file != null) && file.isFile()) {
+			try {
+				CompiledProblem compiledProblem = CompiledProblem.read(file, entry.groundProblem);
+				if (compiledProblem != null) {
+					LOG.fine("Compiled problem read from " + file);
+					return compiledProblem;
+				}
+				LOG.info("Compiled problem " + file + " does not match its problem. Recompiling.");
+			} catch (IOException e) {
+				LOG.warning("Compiled problem could not be read from " + file + ". " + e.getMessage());
+			}
+		}
+		CompiledProblem compiledProblem = new CompiledProblem(entry.groundProblem);
+		if (file != null) {
+			try {
+				compiledProblem.write(file);
+			} catch (IOException e) {
+				LOG.warning("Compiled problem could not be written to " + file + ". " + e.getMessage());
+			}
+		}
+		return compiledProblem;
+	}
+
+	/**
+	 * Hex SHA-256 of the domain file followed by the problem file
+	 */
+	private static String hash(File domain, File problem) throws IOException {
+		MessageDigest digest = null;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM provides SHA-256
+			throw new IllegalStateException(e);
+		}
+		byte[] domainBytes = Files.readAllBytes(domain.toPath());
+		// The length separates the files so that no two pairs hash alike
+		digest.update(ByteBuffer.allocate(8).putLong(domainBytes.length).array());
+		digest.update(domainBytes);
+		digest.update(Files.readAllBytes(problem.toPath()));
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >>> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	private static class Entry {
+
+		private String key = null;
+		private GroundProblem groundProblem = null;
+		// Guarded by the entry
+		private CompiledProblem compiledProblem = null;
+		private String notCompiled = null;
+
+		public Entry(String key, GroundProblem groundProblem) {
+			this.key = key;
+			this.groundProblem = groundProblem;
+		}
+	}
+}
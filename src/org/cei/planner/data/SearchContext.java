@@ -0,0 +1,157 @@
+package org.cei.planner.data;
+
+import org.cei.planner.metrics.SearchMetrics;
+
+/**
+ * State shared by every node of a search. Successors inherit the context of
+ * their parent.
+ */
+public class SearchContext {
+
+	private TranspositionTable transpositionTable = null;
+	private CompiledProblem compiledProblem = null;
+	private NodeBudget nodeBudget = null;
+	private SearchMetrics metrics = null;
+	private HeuristicCache heuristicCache = null;
+	// JavaFF states derived from one initial state share a relaxed planning
+	// graph, which is not safe to evaluate from several threads at once
+	private Object heuristicLock = new Object();
+	// Copied for each worker, so may be null
+	private HeuristicEvaluator heuristicEvaluator = null;
+	private ThreadLocal<HeuristicEvaluator> workerEvaluators = new ThreadLocal<>();
+
+	public SearchContext() {
+	}
+
+	public SearchContext(TranspositionTable transpositionTable) {
+		this.transpositionTable = transpositionTable;
+	}
+
+	public SearchContext(TranspositionTable transpositionTable, CompiledProblem compiledProblem) {
+		this(transpositionTable);
+		this.compiledProblem = compiledProblem;
+	}
+
+	public SearchContext(TranspositionTable transpositionTable, CompiledProblem compiledProblem,
+			NodeBudget nodeBudget) {
+		this(transpositionTable, compiledProblem);
+		this.nodeBudget = nodeBudget;
+	}
+
+	public SearchContext(TranspositionTable transpositionTable, CompiledProblem compiledProblem,
+			NodeBudget nodeBudget, SearchMetrics metrics) {
+		this(transpositionTable, compiledProblem, nodeBudget);
+		this.metrics = metrics;
+	}
+
+	public SearchContext(TranspositionTable transpositionTable, CompiledProblem compiledProblem,
+			NodeBudget nodeBudget, SearchMetrics metrics, HeuristicCache heuristicCache) {
+		this(transpositionTable, compiledProblem, nodeBudget, metrics);
+		this.heuristicCache = heuristicCache;
+	}
+
+	/**
+	 * May be null, in which case states are never shared between nodes
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return transpositionTable;
+	}
+
+	/**
+	 * May be null, in which case nodes are searched on JavaFF states
+	 */
+	public CompiledProblem getCompiledProblem() {
+		return compiledProblem;
+	}
+
+	/**
+	 * May be null, in which case the tree grows without bound
+	 */
+	public NodeBudget getNodeBudget() {
+		return nodeBudget;
+	}
+
+	/**
+	 * May be null, in which case the search is not measured
+	 */
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * May be null, in which case every node evaluates its own state
+	 */
+	public HeuristicCache getHeuristicCache() {
+		return heuristicCache;
+	}
+
+	/**
+	 * Held while a heuristic value is evaluated by a thread without an
+	 * evaluator of its own, for any node of the search or of any other tree
+	 * of the same problem
+	 */
+	public Object getHeuristicLock() {
+		return heuristicLock;
+	}
+
+	public void setHeuristicEvaluator(HeuristicEvaluator heuristicEvaluator) {
+		this.heuristicEvaluator = heuristicEvaluator;
+	}
+
+	/**
+	 * An evaluator for a new worker of the search, or null if the search has
+	 * none, in which case its workers evaluate under the heuristic lock
+	 */
+	public HeuristicEvaluator newWorkerEvaluator() {
+		return (heuristicEvaluator == null) ? null : heuristicEvaluator.copy();
+	}
+
+	/**
+	 * The evaluator the current thread evaluates heuristic values with, or
+	 * null if it evaluates them under the heuristic lock
+	 */
+	public HeuristicEvaluator getWorkerEvaluator() {
+		return workerEvaluators.get();
+	}
+
+	/**
+	 * Binds an evaluator to the current thread for every tree of the search
+	 * @param evaluator null to evaluate under the heuristic lock
+	 * @return the evaluator bound before, to be restored once the worker is
+	 *         done
+	 */
+	public HeuristicEvaluator setWorkerEvaluator(HeuristicEvaluator evaluator) {
+		HeuristicEvaluator previous = workerEvaluators.get();
+		if (evaluator == null) {
+			workerEvaluators.remove();
+		} else {
+			workerEvaluators.set(evaluator);
+		}
+		return previous;
+	}
+
+	/**
+	 * Creates a context for a search tree that must not share nodes with
+	 * this one. Both trees are measured by the same metrics and share
+	 * heuristic values, their lock and the evaluators bound to workers.
+	 */
+	public SearchContext newTreeContext() {
+		TranspositionTable transpositionTable = null;
+		if (this.transpositionTable != null) {
+			transpositionTable = new TranspositionTable(
+					this.transpositionTable.getCapacity(),
+					this.transpositionTable.getEvictionPolicy());
+		}
+		NodeBudget nodeBudget = null;
+		if (this.nodeBudget != null) {
+			nodeBudget = new NodeBudget(this.nodeBudget.getMaxNodes(),
+					this.nodeBudget.getEvictionPolicy());
+		}
+		SearchContext context = new SearchContext(transpositionTable, compiledProblem, nodeBudget,
+				metrics, heuristicCache);
+		context.heuristicLock = heuristicLock;
+		context.heuristicEvaluator = heuristicEvaluator;
+		context.workerEvaluators = workerEvaluators;
+		return context;
+	}
+}
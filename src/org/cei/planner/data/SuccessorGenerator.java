@@ -0,0 +1,134 @@
+package org.cei.planner.data;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Finds the actions applicable in a compiled state without testing every
+ * action. Actions are arranged in a decision tree over their preconditions,
+ * taken in increasing proposition order. Each node of the tree tests one
+ * proposition: actions requiring it lie below its true branch and the
+ * remaining actions further along its chain of don't care siblings.
+ * Traversal only enters true branches whose proposition holds, so the work
+ * done follows the number of applicable actions rather than the total.
+ */
+public class SuccessorGenerator {
+
+	private GeneratorNode root = null;
+
+	/**
+	 * @param preconditions the precondition propositions of each action in
+	 *            increasing order
+	 */
+	public SuccessorGenerator(int[][] preconditions) {
+		Integer[] actions = new Integer[preconditions.length];
+		for (int i = 0; i < actions.length; i++) {
+			actions[i] = i;
+		}
+		this.root = build(preconditions, actions, 0);
+	}
+
+	/**
+	 * Writes the indices of the actions applicable in the state to the
+	 * array, which must hold every action
+	 * @return the number of applicable actions
+	 */
+	public int getApplicableActions(long[] bits, int[] applicable) {
+		return collect(root, bits, applicable, 0);
+	}
+
+	public boolean hasApplicableAction(long[] bits) {
+		return hasApplicable(root, bits);
+	}
+
+	private int collect(GeneratorNode node, long[] bits, int[] applicable, int count) {
+		while (node != null) {
+			int[] actions = node.actions;
+			System.arraycopy(actions, 0, applicable, count, actions.length);
+			count += actions.length;
+			if ((node.trueChild != null) && isTrue(bits, node.proposition)) {
+				count = collect(node.trueChild, bits, applicable, count);
+			}
+			node = node.dontCare;
+		}
+		return count;
+	}
+
+	private boolean hasApplicable(GeneratorNode node, long[] bits) {
+		while (node != null) {
+			if (node.actions.length > 0) {
+				return true;
+			}
+			if ((node.trueChild != null) && isTrue(bits, node.proposition)
+					&& hasApplicable(node.trueChild, bits)) {
+				return true;
+			}
+			node = node.dontCare;
+		}
+		return false;
+	}
+
+	private static boolean isTrue(long[] bits, int proposition) {
+		return (bits[proposition >>> 6] & (1L << proposition)) != 0;
+	}
+
+	/**
+	 * Builds the chain of nodes for actions whose first preconditions, up to
+	 * the given depth, have already been tested
+	 */
+	private static GeneratorNode build(final int[][] preconditions, Integer[] actions, final int depth) {
+		// Actions with no untested preconditions are applicable at this point
+		int immediate = 0;
+		for (Integer action : actions) {
+			if (preconditions[action].length == depth) {
+				immediate++;
+			}
+		}
+		GeneratorNode first = new GeneratorNode();
+		first.actions = new int[immediate];
+		Integer[] remaining = new Integer[actions.length - immediate];
+		int a = 0;
+		int r = 0;
+		for (Integer action : actions) {
+			if (preconditions[action].length == depth) {
+				first.actions[a++] = action;
+			} else {
+				remaining[r++] = action;
+			}
+		}
+		// Group the remaining actions by their next precondition
+		Arrays.sort(remaining, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				return Integer.compare(preconditions[first][depth], preconditions[second][depth]);
+			}
+		});
+		GeneratorNode node = first;
+		int start = 0;
+		while (start < remaining.length) {
+			int proposition = preconditions[remaining[start]][depth];
+			int end = start + 1;
+			while ((end < remaining.length) && (preconditions[remaining[end]][depth] == proposition)) {
+				end++;
+			}
+			if (node.proposition >= 0) {
+				GeneratorNode next = new GeneratorNode();
+				next.actions = new int[0];
+				node.dontCare = next;
+				node = next;
+			}
+			node.proposition = proposition;
+			node.trueChild = build(preconditions, Arrays.copyOfRange(remaining, start, end), depth + 1);
+			start = end;
+		}
+		return first;
+	}
+
+	private static class GeneratorNode {
+		// Proposition tested by the node, or -1 if it only holds actions
+		private int proposition = -1;
+		private int[] actions = null;
+		private GeneratorNode trueChild = null;
+		private GeneratorNode dontCare = null;
+	}
+}
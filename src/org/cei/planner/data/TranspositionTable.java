@@ -0,0 +1,91 @@
+package org.cei.planner.data;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.cei.planner.util.BoundedCache;
+import org.cei.planner.util.EvictionPolicyEnum;
+
+/**
+ * Maps states, JavaFF or compiled, to the node that holds their statistics so that a state
+ * reached along different paths shares one node. Evicted states are simply
+ * no longer shared; their nodes remain in the tree.
+ */
+public class TranspositionTable {
+
+	private BoundedCache<Object, MCTSNode> nodes = null;
+	private EvictionPolicyEnum evictionPolicy = null;
+
+	public TranspositionTable(int capacity, EvictionPolicyEnum evictionPolicy) {
+		this.nodes = new BoundedCache<>(capacity, evictionPolicy);
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * @param key the JavaFF or compiled state
+	 */
+	public MCTSNode get(Object key) {
+		return nodes.get(key);
+	}
+
+	/**
+	 * Adds the node unless its state already has one
+	 * @return the node now held for the state
+	 */
+	public MCTSNode putIfAbsent(MCTSNode node) {
+		return nodes.putIfAbsent(node.getKey(), node);
+	}
+
+	/**
+	 * Removes the state of the node, unless it is now held for another node
+	 */
+	public void remove(MCTSNode node) {
+		nodes.remove(node.getKey(), node);
+	}
+
+	/**
+	 * Replaces the contents of the table with the nodes of the tree below
+	 * the root, so states outside it are no longer held. Only nodes that
+	 * have already been expanded are walked, up to the capacity of the
+	 * table.
+	 */
+	public void retain(MCTSNode root) {
+		nodes.clear();
+		Set<MCTSNode> seen = Collections.newSetFromMap(new IdentityHashMap<MCTSNode, Boolean>());
+		Deque<MCTSNode> open = new ArrayDeque<>();
+		open.add(root);
+		seen.add(root);
+		while (!open.isEmpty() && (nodes.size() < nodes.getCapacity())) {
+			MCTSNode node = open.poll();
+			putIfAbsent(node);
+			if (!node.isExpanded()) {
+				continue;
+			}
+			for (int slot = 0; slot < node.getSuccessorCount(); slot++) {
+				MCTSNode successor = node.getCreatedSuccessor(slot);
+				if ((successor != null) && seen.add(successor)) {
+					open.add(successor);
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		nodes.clear();
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+
+	public int getCapacity() {
+		return nodes.getCapacity();
+	}
+
+	public EvictionPolicyEnum getEvictionPolicy() {
+		return evictionPolicy;
+	}
+}
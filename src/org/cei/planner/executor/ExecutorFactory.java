@@ -2,19 +2,75 @@ package org.cei.planner.executor;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
 
+/**
+ * Shared scheduler for work that genuinely runs in parallel, such as
+ * parallel search workers and leaf rollouts. Sequential phases of a search
+ * run inline on the calling thread rather than being handed to it.
+ */
 public class ExecutorFactory {
 	
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+	
+	private static final Logger LOG = Logger.getLogger(ExecutorFactory.class.getName());
+	
 	private static ExecutorService EXECUTOR = null;
+	private static ExecutorTypeEnum executorType = ExecutorTypeEnum.FORK_JOIN;
+	private static int parallelism = DEFAULT_PARALLELISM;
 	
 	private ExecutorFactory(){
 		//static class
 	}
 	
-	public static ExecutorService getExecutor() {
+	/**
+	 * Sets the kind of executor to use. An executor that has already been
+	 * created is shut down once its submitted tasks complete.
+	 * @param executorType
+	 * @param parallelism the maximum number of active threads for a fork join pool
+	 */
+	public static synchronized void configure(ExecutorTypeEnum executorType, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		ExecutorFactory.executorType = executorType;
+		ExecutorFactory.parallelism = parallelism;
+		if (EXECUTOR != null) {
+			EXECUTOR.shutdown();
+			EXECUTOR = null;
+		}
+	}
+	
+	public static synchronized ExecutorService getExecutor() {
 		if (EXECUTOR == null) {
-			EXECUTOR = Executors.newCachedThreadPool();
+			EXECUTOR = createExecutor();
 		}
 		return EXECUTOR;
 	}
+	
+	public static synchronized ExecutorTypeEnum getExecutorType() {
+		return executorType;
+	}
+	
+	public static synchronized int getParallelism() {
+		return parallelism;
+	}
+	
+	private static ExecutorService createExecutor() {
+		switch (executorType) {
+		case CACHED:
+			return Executors.newCachedThreadPool();
+		case VIRTUAL:
+			try {
+				return (ExecutorService) Executors.class.getMethod(
+						"newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				LOG.warning("Virtual threads are not supported by this JVM. Using a fork join pool.");
+				return new ForkJoinPool(parallelism);
+			}
+		default:
+			return new ForkJoinPool(parallelism);
+		}
+	}
 }
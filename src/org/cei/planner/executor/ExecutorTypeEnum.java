@@ -0,0 +1,7 @@
+package org.cei.planner.executor;
+
+public enum ExecutorTypeEnum {
+	FORK_JOIN, // Work stealing pool bounded by the configured parallelism
+	VIRTUAL, // A virtual thread per task, where the JVM supports it
+	CACHED // Unbounded pool of platform threads
+}
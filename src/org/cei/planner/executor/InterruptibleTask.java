@@ -0,0 +1,63 @@
+package org.cei.planner.executor;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * A task that can be interrupted while it runs on any executor. The futures
+ * of a fork join pool ignore cancel(true), so the task records the thread
+ * running it and interrupts that thread itself. The interrupt is cleared
+ * once the task ends so that it does not reach the next task of a pooled
+ * thread.
+ */
+public abstract class InterruptibleTask<V> implements Callable<V> {
+
+	// Guarded by the task
+	private Thread runner = null;
+	private boolean interrupted = false;
+
+	@Override
+	public final V call() throws Exception {
+		synchronized (this) {
+			if (interrupted) {
+				throw new InterruptedException("Task cancelled");
+			}
+			runner = Thread.currentThread();
+		}
+		try {
+			return compute();
+		} finally {
+			synchronized (this) {
+				runner = null;
+			}
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Interrupts the task if it is running, or stops it from starting
+	 */
+	public synchronized void interrupt() {
+		interrupted = true;
+		if (runner != null) {
+			runner.interrupt();
+		}
+	}
+
+	protected abstract V compute() throws Exception;
+
+	/**
+	 * Interrupts the tasks and cancels their futures, for a caller that
+	 * will not wait for them to finish
+	 */
+	public static void cancelAll(List<? extends InterruptibleTask<?>> tasks,
+			List<? extends Future<?>> futures) {
+		for (InterruptibleTask<?> task : tasks) {
+			task.interrupt();
+		}
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+}
@@ -1,27 +1,43 @@
 package org.cei.planner.mcrw;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.SplittableRandom;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+
 import javaff.data.GroundProblem;
 import javaff.data.Plan;
 
+import org.cei.planner.AnytimePlans;
+import org.cei.planner.IPlanListener;
 import org.cei.planner.IPlanner;
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.HeuristicCache;
+import org.cei.planner.data.HeuristicEvaluator;
 import org.cei.planner.data.MCTSNode;
-import org.cei.planner.executor.ExecutorFactory;
-import org.cei.planner.policy.IPolicy;
+import org.cei.planner.data.ProblemCache;
+import org.cei.planner.data.SearchContext;
+import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.metrics.SearchMetrics;
 import org.cei.planner.policy.PureRandomWalk;
 
 public class MCRWPlanner implements IPlanner{
 
 	public static final int DEFAULT_MAX_ITERATIONS = 7;
+	public static final int DEFAULT_HEURISTIC_CACHE_SIZE = 10000;
 	
-	private static ExecutorService EXECUTOR = ExecutorFactory.getExecutor();
 	private static final Logger LOG = Logger.getLogger(MCRWPlanner.class.getName());
 	
 	private int maxIterations = DEFAULT_MAX_ITERATIONS;
 	private Class<? extends PureRandomWalk> walkPolicy = null;
+	private boolean compiled = false;
+	private ProblemCache problemCache = null;
+	private SearchMetrics metrics = new SearchMetrics();
+	private int heuristicCacheSize = DEFAULT_HEURISTIC_CACHE_SIZE;
+	private int parallelWalks = 1;
+	private Long seed = null;
+	private long anytimeDeadline = 0;
+	private IPlanListener planListener = null;
 	
 	public MCRWPlanner(Class<? extends PureRandomWalk> walkPolicy) {
 		this.walkPolicy = walkPolicy;
@@ -35,21 +51,161 @@ public class MCRWPlanner implements IPlanner{
 	public static Logger getLog() {
 		return LOG;
 	}
+
+	/**
+	 * The metrics of this planner, reset at the start of each solve. While
+	 * a solve runs they are also exposed over JMX.
+	 */
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Walks on bit states compiled from the ground problem rather than on
+	 * JavaFF states. Problems that are not propositional STRIPS are walked
+	 * on JavaFF states regardless.
+	 * @param compiled
+	 */
+	public void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	public boolean isCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * Takes the compiled form of each problem from the cache, so a problem
+	 * the cache handed out is compiled at most once.
+	 * @param problemCache or null to compile every problem
+	 */
+	public void setProblemCache(ProblemCache problemCache) {
+		this.problemCache = problemCache;
+	}
+
+	public ProblemCache getProblemCache() {
+		return problemCache;
+	}
+
+	/**
+	 * Sets the number of heuristic values kept for reuse during a solve by
+	 * every policy of the planner. A size of 0 disables the cache.
+	 * @param size
+	 */
+	public void setHeuristicCache(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Heuristic cache size must not be negative");
+		}
+		this.heuristicCacheSize = size;
+	}
+
+	public int getHeuristicCacheSize() {
+		return heuristicCacheSize;
+	}
+
+	/**
+	 * Sets the number of walkers that share the walks of each step. Walk
+	 * policies that define their own walk loop, such as
+	 * MCDeadlockAvoidance, always walk on a single thread.
+	 * @param parallelWalks
+	 */
+	public void setParallelWalks(int parallelWalks) {
+		if (parallelWalks < 1) {
+			throw new IllegalArgumentException("Number of walkers must be at least 1");
+		}
+		this.parallelWalks = parallelWalks;
+	}
+
+	public int getParallelWalks() {
+		return parallelWalks;
+	}
+
+	/**
+	 * Seeds every random choice of a solve. A seeded solve walked by a
+	 * single walker is repeated exactly; parallel walkers each draw from
+	 * their own split of the seed, but race to the end of each step.
+	 * Unless a seed is set, one is drawn at the start of each solve and
+	 * logged so the solve can be repeated.
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * The seed set for every solve, or null if each solve draws its own
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Keeps walking after the first plan until the deadline, restarting
+	 * from the initial state each time a goal is reached. Each strictly
+	 * better plan, by the metric of the problem or else by length, is
+	 * passed to the listener as it is found, and solve returns the best
+	 * plan, or null if none was found in time. A deadline of 0 returns the
+	 * first plan found.
+	 * @param deadline nanoseconds from the start of the solve
+	 * @param listener may be null
+	 */
+	public void setAnytime(long deadline, IPlanListener listener) {
+		if (deadline < 0) {
+			throw new IllegalArgumentException("Deadline must not be negative");
+		}
+		this.anytimeDeadline = deadline;
+		this.planListener = listener;
+	}
+
+	public boolean isAnytime() {
+		return anytimeDeadline > 0;
+	}
 		
 	@Override
 	public Plan solve(GroundProblem problem) throws Exception {
+		metrics.reset();
+		registerMetrics();
+		try {
+			return walk(problem);
+		} finally {
+			unregisterMetrics();
+		}
+	}
+
+	private Plan walk(GroundProblem problem) throws Exception {
 		long startTime = System.nanoTime();
+		long deadline = isAnytime() ? startTime + anytimeDeadline : Long.MAX_VALUE;
+		AnytimePlans plans = new AnytimePlans(planListener, problem);
 		
 		LOG.config("Max iterations set to " + maxIterations);
+		PureRandomWalk walkPolicy = this.walkPolicy.getConstructor().newInstance();
+		walkPolicy.setParallelism(parallelWalks);
+		long walkSeed = (seed == null) ? System.nanoTime() : seed;
+		LOG.config("Random seed set to " + walkSeed);
+		walkPolicy.setRandom(new SplittableRandom(walkSeed));
 		// Initial state
-		MCTSNode initialNode = new MCTSNode(problem.getMetricInitialState(), walkPolicy.getConstructor(MCTSNode.class).newInstance(new MCTSNode(null, null)).getStateValuePolicy());
+		MCTSNode initialNode = createInitialNode(problem, walkPolicy.getStateValuePolicy());
 		
 		MCTSNode currentNode = initialNode;
 		
 		int iterations = 0;
 		double hMin = currentNode.getHValue();
-		while (!currentNode.isGoal()) {
-			if (iterations > maxIterations) {
+		while (System.nanoTime() < deadline) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException("Solve cancelled");
+			}
+			if (currentNode.isGoal()) {
+				if (!isAnytime()) {
+					break;
+				}
+				if (plans.offer(currentNode.getState().getSolution())) {
+					LOG.info("Plan of length " + plans.getBestLength() + " and cost " + plans.getBestCost()
+							+ " found in " + ((System.nanoTime() - startTime) * Math.pow(10, -6)) + " ms.");
+				}
+				currentNode = initialNode;
+				iterations = 0;
+				hMin = currentNode.getHValue();
+			} else if (iterations > maxIterations) {
 				LOG.info("Reached max iterations of " + maxIterations);
 				currentNode = initialNode;
 				iterations = 0;			
@@ -58,9 +214,7 @@ public class MCRWPlanner implements IPlanner{
 				currentNode = initialNode;
 				iterations = 0;
 			}
-			IPolicy walkPolicy = this.walkPolicy.getConstructor(MCTSNode.class).newInstance(currentNode);
-			Future<MCTSNode> promise = EXECUTOR.submit(walkPolicy);
-			currentNode = promise.get();
+			currentNode = walkPolicy.run(currentNode);
 			if (currentNode.getHValue() < hMin) {
 				LOG.info("There have been " + ++iterations + " iterations of MCRW before finding a better h-value of " + currentNode.getValue());
 				hMin = currentNode.getHValue();
@@ -70,8 +224,53 @@ public class MCRWPlanner implements IPlanner{
 			}
 		}
 
+		if (isAnytime()) {
+			LOG.info("Deadline reached after " + ((System.nanoTime() - startTime) * Math.pow(10, -6))
+					+ " ms.");
+			return plans.getBest();
+		}
 		LOG.info("Solution found in " + ((System.nanoTime() - startTime) * Math.pow(10, -6))
 				+ " ms.");
 		return currentNode.getState().getSolution();		
 	}
+
+	private void registerMetrics() {
+		try {
+			metrics.register(getClass().getSimpleName() + "@"
+					+ Integer.toHexString(System.identityHashCode(this)));
+		} catch (JMException e) {
+			LOG.warning("Search metrics are not exposed over JMX. " + e.getMessage());
+		}
+	}
+
+	private void unregisterMetrics() {
+		try {
+			metrics.unregister();
+		} catch (JMException e) {
+			LOG.warning("Search metrics could not be removed from JMX. " + e.getMessage());
+		}
+	}
+
+	private MCTSNode createInitialNode(GroundProblem problem, StateValuePolicyEnum stateValuePolicy) {
+		CompiledProblem compiledProblem = null;
+		if (compiled) {
+			try {
+				compiledProblem = (problemCache == null) ? new CompiledProblem(problem)
+						: problemCache.getCompiledProblem(problem);
+			} catch (IllegalArgumentException e) {
+				LOG.warning("Walking on JavaFF states. " + e.getMessage());
+			}
+		}
+		HeuristicCache heuristicCache = null;
+		if (heuristicCacheSize > 0) {
+			heuristicCache = new HeuristicCache(heuristicCacheSize);
+		}
+		SearchContext context = new SearchContext(null, compiledProblem, null, metrics, heuristicCache);
+		context.setHeuristicEvaluator(new HeuristicEvaluator(problem, true));
+		if (compiledProblem == null) {
+			return new MCTSNode(problem.getMetricInitialState(), stateValuePolicy, context);
+		}
+		return new MCTSNode(problem.getMetricInitialState(), compiledProblem.getInitialState(),
+				stateValuePolicy, context);
+	}
 }
@@ -4,37 +4,80 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
+import javax.management.JMException;
+
 import javaff.data.GroundProblem;
 import javaff.data.Plan;
 
+import org.cei.planner.AnytimePlans;
+import org.cei.planner.IPlanListener;
 import org.cei.planner.IPlanner;
+import org.cei.planner.data.BitState;
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.HeuristicCache;
+import org.cei.planner.data.HeuristicEvaluator;
 import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.NodeBudget;
+import org.cei.planner.data.ProblemCache;
+import org.cei.planner.data.SearchContext;
 import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.data.TranspositionTable;
 import org.cei.planner.executor.ExecutorFactory;
+import org.cei.planner.executor.InterruptibleTask;
+import org.cei.planner.metrics.SearchMetrics;
 import org.cei.planner.policy.IPolicy;
+import org.cei.planner.policy.PolicyTask;
 import org.cei.planner.policy.RandomMCRolloutPolicy;
+import org.cei.planner.policy.TreeSearchPolicy;
+import org.cei.planner.util.EvictionPolicyEnum;
+import org.cei.planner.util.NodeEvictionPolicyEnum;
 
 public class MCTSPlanner implements IPlanner {
 
 	private static final long DEFAULT_RUNNING_TIME = 10 * (long) Math.pow(10, 9); // seconds
 	private static final double DEFAULT_LEARNING_RATE = 0.01;
-	private static ExecutorService EXECUTOR = ExecutorFactory.getExecutor();
+	private static final int DEFAULT_NUM_WORKERS = Runtime.getRuntime().availableProcessors();
+	private static final int DEFAULT_HEURISTIC_CACHE_SIZE = 10000;
 	private static final Logger LOG = Logger.getLogger(MCTSPlanner.class.getName());
 
 	private long runningTime = DEFAULT_RUNNING_TIME;
 	private double learningRate = DEFAULT_LEARNING_RATE;
-	private Class<? extends IPolicy> treePolicyClass = null;
+	private Class<? extends TreeSearchPolicy> treePolicyClass = null;
+	private ParallelisationEnum parallelisation = ParallelisationEnum.NONE;
+	private int numWorkers = DEFAULT_NUM_WORKERS;
+	private int leafRollouts = 1;
+	private int transpositionTableSize = 0;
+	private EvictionPolicyEnum evictionPolicy = EvictionPolicyEnum.LRU;
+	private boolean compiled = false;
+	private ProblemCache problemCache = null;
+	private boolean treeReuse = false;
+	private long nodeBudget = 0;
+	private NodeEvictionPolicyEnum nodeEvictionPolicy = NodeEvictionPolicyEnum.LRU;
+	private SearchMetrics metrics = new SearchMetrics();
+	private int heuristicCacheSize = DEFAULT_HEURISTIC_CACHE_SIZE;
+	private Long seed = null;
+	private double wideningCoefficient = 0.0;
+	private double wideningExponent = 0.0;
+	private long rolloutDepth = 0;
+	private long timeBudget = 0;
+	private TimeManager timeManager = null;
+	private long iterationsPerMove = 0;
+	private long anytimeDeadline = 0;
+	private IPlanListener planListener = null;
+	// Time by which the current solve must finish
+	private long deadline = Long.MAX_VALUE;
 
-	public MCTSPlanner(Class<? extends IPolicy> treePolicy) {
+	public MCTSPlanner(Class<? extends TreeSearchPolicy> treePolicy) {
 		this.treePolicyClass  = treePolicy;
 	}
 
-	public MCTSPlanner(Class<? extends IPolicy> treePolicy, long runningTime, double learningRate) {
+	public MCTSPlanner(Class<? extends TreeSearchPolicy> treePolicy, long runningTime, double learningRate) {
 		this(treePolicy);
 		this.runningTime = runningTime;
 		this.learningRate = learningRate;
@@ -44,74 +87,791 @@ public class MCTSPlanner implements IPlanner {
 		return LOG;
 	}
 
+	/**
+	 * The metrics of this planner, reset at the start of each solve. While
+	 * a solve runs they are also exposed over JMX.
+	 */
+	public SearchMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets how the search of each move is spread across workers
+	 * @param parallelisation
+	 * @param numWorkers
+	 */
+	public void setParallelisation(ParallelisationEnum parallelisation, int numWorkers) {
+		if (numWorkers < 1) {
+			throw new IllegalArgumentException("Number of workers must be at least 1");
+		}
+		this.parallelisation = parallelisation;
+		this.numWorkers = numWorkers;
+	}
+
+	public ParallelisationEnum getParallelisation() {
+		return parallelisation;
+	}
+
+	public int getNumWorkers() {
+		return numWorkers;
+	}
+
+	/**
+	 * Sets the number of rollouts run in parallel from each new leaf. Their
+	 * values are averaged and backed up in a single pass.
+	 * @param leafRollouts
+	 */
+	public void setLeafParallelisation(int leafRollouts) {
+		if (leafRollouts < 1) {
+			throw new IllegalArgumentException("Number of leaf rollouts must be at least 1");
+		}
+		this.leafRollouts = leafRollouts;
+	}
+
+	public int getLeafParallelisation() {
+		return leafRollouts;
+	}
+
+	/**
+	 * Shares the node of a state between every parent that generates it,
+	 * holding at most the given number of states. A size of 0 disables the
+	 * table.
+	 * @param size
+	 * @param evictionPolicy
+	 */
+	public void setTranspositionTable(int size, EvictionPolicyEnum evictionPolicy) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Transposition table size must not be negative");
+		}
+		this.transpositionTableSize = size;
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	public int getTranspositionTableSize() {
+		return transpositionTableSize;
+	}
+
+	/**
+	 * Searches on bit states compiled from the ground problem rather than on
+	 * JavaFF states. Problems that are not propositional STRIPS are searched
+	 * on JavaFF states regardless.
+	 * @param compiled
+	 */
+	public void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	public boolean isCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * Takes the compiled form of each problem from the cache, so a problem
+	 * the cache handed out is compiled at most once.
+	 * @param problemCache or null to compile every problem
+	 */
+	public void setProblemCache(ProblemCache problemCache) {
+		this.problemCache = problemCache;
+	}
+
+	public ProblemCache getProblemCache() {
+		return problemCache;
+	}
+
+	/**
+	 * Keeps the subtree of each chosen successor as the tree searched for
+	 * the next move, and releases the rest of the tree straight away.
+	 * Without reuse the chosen successor is searched from its current
+	 * subtree but the rest of the tree stays reachable from it.
+	 * @param treeReuse
+	 */
+	public void setTreeReuse(boolean treeReuse) {
+		this.treeReuse = treeReuse;
+	}
+
+	public boolean isTreeReuse() {
+		return treeReuse;
+	}
+
+	/**
+	 * Bounds the number of nodes held in the search tree. Once the budget
+	 * is exceeded the coldest subtrees are evicted, their statistics kept on
+	 * the node they hang from. Under root parallelisation the budget is
+	 * split between the trees. A budget of 0 lets the tree grow without
+	 * bound.
+	 * @param maxNodes
+	 * @param evictionPolicy
+	 */
+	public void setNodeBudget(long maxNodes, NodeEvictionPolicyEnum evictionPolicy) {
+		if (maxNodes < 0) {
+			throw new IllegalArgumentException("Node budget must not be negative");
+		}
+		this.nodeBudget = maxNodes;
+		this.nodeEvictionPolicy = evictionPolicy;
+	}
+
+	public long getNodeBudget() {
+		return nodeBudget;
+	}
+
+	/**
+	 * Sets the number of heuristic values kept for reuse during a solve by
+	 * every policy of the planner. A size of 0 disables the cache.
+	 * @param size
+	 */
+	public void setHeuristicCache(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Heuristic cache size must not be negative");
+		}
+		this.heuristicCacheSize = size;
+	}
+
+	public int getHeuristicCacheSize() {
+		return heuristicCacheSize;
+	}
+
+	/**
+	 * Explores at most max(1, ceil(k * n^alpha)) successors of a node that
+	 * successors have been selected from n times. Successors are created
+	 * only once selected, so nodes with many applicable actions cost little
+	 * until they are searched. A coefficient of 0, the default, disables
+	 * widening.
+	 * @param coefficient k
+	 * @param exponent alpha, between 0 and 1
+	 */
+	public void setProgressiveWidening(double coefficient, double exponent) {
+		if (coefficient < 0.0) {
+			throw new IllegalArgumentException("Widening coefficient must not be negative");
+		}
+		if ((exponent < 0.0) || (exponent > 1.0)) {
+			throw new IllegalArgumentException("Widening exponent must be between 0 and 1");
+		}
+		this.wideningCoefficient = coefficient;
+		this.wideningExponent = exponent;
+	}
+
+	public double getWideningCoefficient() {
+		return wideningCoefficient;
+	}
+
+	public double getWideningExponent() {
+		return wideningExponent;
+	}
+
+	/**
+	 * Cuts rollouts off after the given number of steps and scores the
+	 * state reached by its heuristic value, normalised against that of the
+	 * initial state, instead of playing on until a goal or dead end. Each
+	 * rollout costs one heuristic evaluation, shared through the heuristic
+	 * cache, but far fewer steps. Each worker, and each leaf rollout, holds
+	 * a relaxed planning graph of its own, so evaluations under
+	 * parallelisation do not wait for each other. A depth of 0, the default,
+	 * plays every rollout to the end.
+	 * @param rolloutDepth
+	 */
+	public void setRolloutDepth(long rolloutDepth) {
+		if (rolloutDepth < 0) {
+			throw new IllegalArgumentException("Rollout depth must not be negative");
+		}
+		this.rolloutDepth = rolloutDepth;
+	}
+
+	public long getRolloutDepth() {
+		return rolloutDepth;
+	}
+
+	/**
+	 * Seeds every random choice of a solve. Each worker, and each
+	 * policy of a worker, draws from its own split of the seed, so workers
+	 * never contend for a source. A seeded solve makes the same choices
+	 * again, although moves that end on time may make a different number of
+	 * rollouts. Moves limited by iterations instead make the same number
+	 * every time, so a seeded solve returns the same plan unless workers
+	 * share a tree.
+	 * Unless a seed is set, one is drawn at the start of each solve and
+	 * logged so the solve can be repeated.
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * The seed set for every solve, or null if each solve draws its own
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Ends each move once every worker has made the given number of
+	 * iterations, however long they take, instead of on time. The running
+	 * time and time budget are then ignored, although an anytime deadline
+	 * still ends the solve. A limit of 0, the default, ends moves on time.
+	 * @param iterationsPerMove
+	 */
+	public void setIterationsPerMove(long iterationsPerMove) {
+		if (iterationsPerMove < 0) {
+			throw new IllegalArgumentException("Iterations per move must not be negative");
+		}
+		this.iterationsPerMove = iterationsPerMove;
+	}
+
+	public long getIterationsPerMove() {
+		return iterationsPerMove;
+	}
+
+	/**
+	 * Splits the given time across the moves of a solve instead of spending
+	 * the running time on every move. Moves stop early once their best
+	 * successor cannot be overtaken and run on while the best successors are
+	 * close. The budget is a target: once it is spent each remaining move
+	 * still gets a small share. A budget of 0 spends the running time on
+	 * every move.
+	 * @param timeBudget nanoseconds for the whole solve
+	 */
+	public void setTimeBudget(long timeBudget) {
+		if (timeBudget < 0) {
+			throw new IllegalArgumentException("Time budget must not be negative");
+		}
+		this.timeBudget = timeBudget;
+	}
+
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * Keeps searching after the first plan until the deadline, restarting
+	 * from the initial state each time a terminal state is reached. Each
+	 * strictly better plan, by the metric of the problem or else by length,
+	 * is passed to the listener as it is found, and solve returns the best
+	 * plan, or null if none was found in time. A deadline of 0 returns the
+	 * first plan found.
+	 * @param deadline nanoseconds from the start of the solve
+	 * @param listener may be null
+	 */
+	public void setAnytime(long deadline, IPlanListener listener) {
+		if (deadline < 0) {
+			throw new IllegalArgumentException("Deadline must not be negative");
+		}
+		this.anytimeDeadline = deadline;
+		this.planListener = listener;
+	}
+
+	public boolean isAnytime() {
+		return anytimeDeadline > 0;
+	}
+
 	@Override
 	public Plan solve(GroundProblem problem) throws Exception,
 			ExecutionException {
 		long startTime = System.nanoTime();
 		int iterationsMCTS = 0;
 		LOG.config("Iteration running time set to " + (this.runningTime * Math.pow(10, -6)) + " ms.");
-		// Initialise root state as current
-		MCTSNode currentNode = new MCTSNode(problem.getSTRIPSInitialState(), StateValuePolicyEnum.H_VALUE);
-		while (!currentNode.isTerminal()) {
-			MCTSNode nextState = runMCTSIteration(currentNode);
-			currentNode = nextState;
-			LOG.info("There have been " + ++iterationsMCTS + " iterations of MCTS");
+		metrics.reset();
+		registerMetrics();
+		long solveSeed = (seed == null) ? System.nanoTime() : seed;
+		LOG.config("Random seed set to " + solveSeed);
+		deadline = isAnytime() ? startTime + anytimeDeadline : Long.MAX_VALUE;
+		AnytimePlans plans = new AnytimePlans(planListener, problem);
+		timeManager = (timeBudget > 0) ? new TimeManager(timeBudget) : null;
+		if (timeManager != null) {
+			LOG.config("Solve time budget set to " + (timeBudget * Math.pow(10, -6)) + " ms.");
+			timeManager.startSolve();
+		}
+		try {
+			// Initialise root state as current
+			SearchContext context = createContext(problem);
+			MCTSNode currentNode = createRoot(problem, context);
+			List<SearchWorker> workers = createWorkers(new SplittableRandom(solveSeed), currentNode);
+			int depth = 0;
+			while (System.nanoTime() < deadline) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException("Solve cancelled");
+				}
+				if (currentNode.isTerminal()) {
+					if (!isAnytime()) {
+						break;
+					}
+					if (currentNode.isGoal() && plans.offer(currentNode.getState().getSolution())) {
+						LOG.info("Plan of length " + plans.getBestLength() + " and cost " + plans.getBestCost()
+								+ " found in " + ((System.nanoTime() - startTime) * Math.pow(10, -6)) + " ms.");
+					}
+					currentNode = restart(problem, context);
+					depth = 0;
+					continue;
+				}
+				if (plans.isRuledOut(depth + 1)) {
+					// No plan through this state can be better than the best
+					currentNode = restart(problem, context);
+					depth = 0;
+					continue;
+				}
+				metrics.resetTreeDepth();
+				if (timeManager != null) {
+					timeManager.startMove(currentNode);
+				}
+				MCTSNode nextState = runMCTSIteration(currentNode, workers);
+				if (treeReuse) {
+					metrics.setTreeNodes(promote(currentNode, nextState));
+				}
+				currentNode = nextState;
+				depth++;
+				LOG.info("There have been " + ++iterationsMCTS + " iterations of MCTS");
+			}
+			if (isAnytime()) {
+				LOG.info("Deadline reached after " + ((System.nanoTime() - startTime) * Math.pow(10, -6))
+						+ " ms.");
+				return plans.getBest();
+			}
+			LOG.info("Solution found in " + ((System.nanoTime() - startTime) * Math.pow(10, -6))
+					+ " ms.");
+			return currentNode.getState().getSolution();
+		} finally {
+			unregisterMetrics();
 		}
-		LOG.info("Solution found in " + ((System.nanoTime() - startTime) * Math.pow(10, -6))
-				+ " ms.");
-		return currentNode.getState().getSolution();
 	}
 
-	private MCTSNode runMCTSIteration(MCTSNode initialNode)
-			throws InterruptedException, ExecutionException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
-		long iterationStartTime = System.nanoTime();
-		long runningTime = 0;
+	private void registerMetrics() {
+		try {
+			metrics.register(getClass().getSimpleName() + "@"
+					+ Integer.toHexString(System.identityHashCode(this)));
+		} catch (JMException e) {
+			LOG.warning("Search metrics are not exposed over JMX. " + e.getMessage());
+		}
+	}
 
-		long rollouts = 0;
+	private void unregisterMetrics() {
+		try {
+			metrics.unregister();
+		} catch (JMException e) {
+			LOG.warning("Search metrics could not be removed from JMX. " + e.getMessage());
+		}
+	}
 
-		while (runningTime <= this.runningTime) {
-			MCTSNode newNode = runTreeSearchPolicy(initialNode);
-			newNode.visited();
-			LOG.fine("Tree Policy Completed. " + "Rolling out from node with value: " + newNode.getValue());
-			MCTSNode terminalNode = runRolloutPolicy(newNode);
-			LOG.fine("Rollout Completed. Terminal Node Value: "
-					+ terminalNode.getValue());
-			backup(newNode, terminalNode.getValue());
-			LOG.fine("Backup Completed. " + "New Node Value: " + newNode.getValue());
-			runningTime = System.nanoTime() - iterationStartTime;
-			rollouts++;
+	private MCTSNode createRoot(GroundProblem problem, SearchContext context) {
+		BitState initialState = (context.getCompiledProblem() == null) ? null
+				: context.getCompiledProblem().getInitialState();
+		MCTSNode root = new MCTSNode(problem.getSTRIPSInitialState(), initialState, StateValuePolicyEnum.H_VALUE, context);
+		metrics.setTreeNodes(1);
+		return root;
+	}
+
+	/**
+	 * Starts a new tree from the initial state for the next plan of an
+	 * anytime search. The compiled problem and heuristic values are kept.
+	 */
+	private MCTSNode restart(GroundProblem problem, SearchContext context) {
+		LOG.info("Restarting search from the initial state");
+		return createRoot(problem, context.newTreeContext());
+	}
+
+	private SearchContext createContext(GroundProblem problem) {
+		TranspositionTable transpositionTable = null;
+		if (transpositionTableSize > 0) {
+			transpositionTable = new TranspositionTable(transpositionTableSize, evictionPolicy);
+		}
+		CompiledProblem compiledProblem = null;
+		if (compiled) {
+			try {
+				compiledProblem = (problemCache == null) ? new CompiledProblem(problem)
+						: problemCache.getCompiledProblem(problem);
+			} catch (IllegalArgumentException e) {
+				LOG.warning("Searching on JavaFF states. " + e.getMessage());
+			}
+		}
+		NodeBudget budget = null;
+		if (nodeBudget > 0) {
+			long treeBudget = nodeBudget;
+			if (parallelisation == ParallelisationEnum.ROOT) {
+				treeBudget = Math.max(1, nodeBudget / numWorkers);
+			}
+			budget = new NodeBudget(treeBudget, nodeEvictionPolicy);
 		}
+		HeuristicCache heuristicCache = null;
+		if (heuristicCacheSize > 0) {
+			heuristicCache = new HeuristicCache(heuristicCacheSize);
+		}
+		SearchContext context = new SearchContext(transpositionTable, compiledProblem, budget, metrics,
+				heuristicCache);
+		context.setHeuristicEvaluator(new HeuristicEvaluator(problem, false));
+		return context;
+	}
+
+	/**
+	 * Creates the workers used for the whole solve, each with its own policy
+	 * instances and split of the random source
+	 * @param root of the solve, whose heuristic value depth limited rollouts
+	 *        are scored against
+	 */
+	private List<SearchWorker> createWorkers(SplittableRandom random, MCTSNode root) throws InstantiationException,
+			IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
+		int size = (parallelisation == ParallelisationEnum.NONE) ? 1 : numWorkers;
+		double referenceHValue = 0.0;
+		if (rolloutDepth > 0) {
+			referenceHValue = root.getHValue();
+			if (Double.isInfinite(referenceHValue)) {
+				// The goal is unreachable, so every leaf scores 0 regardless
+				referenceHValue = 0.0;
+			}
+			LOG.config("Rollouts cut off after " + rolloutDepth + " steps, scored against a heuristic value of "
+					+ referenceHValue);
+		}
+		List<SearchWorker> workers = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			workers.add(new SearchWorker(treePolicyClass.getConstructor().newInstance(), random.split(),
+					referenceHValue, root.getContext()));
+		}
+		return workers;
+	}
+
+	private MCTSNode runMCTSIteration(MCTSNode initialNode, List<SearchWorker> workers)
+			throws Exception {
+		if (workers.size() > 1) {
+			return runParallelIteration(initialNode, workers);
+		}
+		long iterationStartTime = System.nanoTime();
+		long rollouts = workers.get(0).search(initialNode);
 		LOG.info(rollouts + " rollouts completed in "
-				+ ((System.nanoTime() - iterationStartTime) * Math.pow(10, -6)) + "ms. " + MCTSNode.getNodeCount() + " nodes explored.");
+				+ ((System.nanoTime() - iterationStartTime) * Math.pow(10, -6)) + "ms. " + metrics.getNodesCreated() + " nodes explored.");
+		return bestSuccessor(initialNode);
+	}
+
+	/**
+	 * Searches from the initial node with several workers. Under root
+	 * parallelisation each worker grows an independent tree: the first
+	 * searches the initial node itself, the others search copies of it, and
+	 * once the running time has elapsed the statistics of the root children
+	 * are merged into the initial node. Under tree parallelisation all
+	 * workers share the tree of the initial node.
+	 */
+	private MCTSNode runParallelIteration(MCTSNode initialNode, List<SearchWorker> workers)
+			throws InterruptedException, ExecutionException {
+		long iterationStartTime = System.nanoTime();
+		List<MCTSNode> roots = new ArrayList<>();
+		List<SearchTask> tasks = new ArrayList<>();
+		List<Future<Long>> searches = new ArrayList<>();
+		for (int i = 0; i < workers.size(); i++) {
+			MCTSNode root = initialNode;
+			if ((parallelisation == ParallelisationEnum.ROOT) && (i > 0)) {
+				root = new MCTSNode(initialNode.getState(), initialNode.getBitState(),
+						StateValuePolicyEnum.H_VALUE, initialNode.getContext().newTreeContext());
+			}
+			roots.add(root);
+			tasks.add(new SearchTask(workers.get(i), root));
+			searches.add(ExecutorFactory.getExecutor().submit(tasks.get(i)));
+		}
+		long rollouts = 0;
+		boolean completed = false;
+		try {
+			for (Future<Long> search : searches) {
+				rollouts += search.get();
+			}
+			completed = true;
+		} finally {
+			if (!completed) {
+				// An interrupted solve, or a failed worker, stops the others
+				InterruptibleTask.cancelAll(tasks, searches);
+			}
+		}
+		if (parallelisation == ParallelisationEnum.ROOT) {
+			mergeRootStatistics(initialNode, roots.subList(1, roots.size()));
+			// The other trees are discarded once merged. Only the nodes below
+			// their roots were counted.
+			for (MCTSNode root : roots.subList(1, roots.size())) {
+				metrics.released(root.countTreeNodes() - 1);
+			}
+		}
+		LOG.info(rollouts + " rollouts completed by " + numWorkers + " workers in "
+				+ ((System.nanoTime() - iterationStartTime) * Math.pow(10, -6)) + "ms. " + metrics.getNodesCreated() + " nodes explored.");
 		return bestSuccessor(initialNode);
 	}
 
-	private MCTSNode runTreeSearchPolicy(MCTSNode node) throws InterruptedException, ExecutionException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, NoSuchMethodException, SecurityException {
-		IPolicy searchPolicy = treePolicyClass.getConstructor(MCTSNode.class).newInstance(node);
-		Future<MCTSNode> newNode = EXECUTOR.submit(searchPolicy);
-		return newNode.get();
+	/**
+	 * Merges the root children of the other trees into the children of the
+	 * initial node. Every tree expands the same state, so the slots of the
+	 * roots hold the same actions. Visit counts are summed and values are
+	 * averaged, weighted by visits where any were recorded, over the trees
+	 * that created the successor. The visits of the other roots are added to
+	 * the initial node so that its count agrees with those of its slots.
+	 */
+	public static void mergeRootStatistics(MCTSNode initialNode, List<MCTSNode> otherRoots) {
+		int successors = initialNode.getSuccessorCount();
+		for (MCTSNode root : otherRoots) {
+			if (root.getSuccessorCount() == successors) {
+				initialNode.addVisits(root.getVisits());
+			}
+		}
+		for (int slot = 0; slot < successors; slot++) {
+			MergedStatistics statistics = new MergedStatistics();
+			statistics.add(initialNode.getCreatedSuccessor(slot), initialNode.getSuccessorVisits(slot));
+			for (MCTSNode root : otherRoots) {
+				if (root.getSuccessorCount() == successors) {
+					statistics.add(root.getCreatedSuccessor(slot), root.getSuccessorVisits(slot));
+				}
+			}
+			initialNode.setSuccessorVisits(slot, statistics.visits);
+			if (statistics.trees > 0) {
+				initialNode.getSuccessor(slot).setValue(statistics.getValue());
+			}
+		}
 	}
 
-	private MCTSNode runRolloutPolicy(MCTSNode node) throws InterruptedException,
-			ExecutionException {
-		IPolicy rolloutPolicy = new RandomMCRolloutPolicy(node);
-		Future<MCTSNode> terminalState = EXECUTOR.submit(rolloutPolicy);
-		return terminalState.get();
+	/**
+	 * Makes the chosen successor the root of the tree. Its subtree and
+	 * statistics are kept while the siblings, and everything held only
+	 * through them, are released.
+	 * @return the number of nodes in the tree below the new root
+	 */
+	public static int promote(MCTSNode root, MCTSNode successor) {
+		successor.detach();
+		root.clearSuccesors();
+		SearchContext context = successor.getContext();
+		if (context.getTranspositionTable() != null) {
+			context.getTranspositionTable().retain(successor);
+		}
+		int treeNodes = successor.countTreeNodes();
+		if (context.getNodeBudget() != null) {
+			context.getNodeBudget().setNodes(treeNodes);
+		}
+		return treeNodes;
 	}
 
-	private void backup(MCTSNode node, double value) {
-		while (node.getParent() != null) {
-			node.setValue(node.getValue()
-					+ (learningRate * (value - node.getValue())));
+	/**
+	 * Backs the value up along the path the tree policy took and then on up
+	 * through the ancestors of the start of the path
+	 */
+	private void backup(List<MCTSNode> path, double value) {
+		for (int i = path.size() - 1; i >= 0; i--) {
+			MCTSNode node = path.get(i);
+			if (node.getParent() != null) {
+				node.updateValue(value, learningRate);
+			}
+		}
+		MCTSNode node = path.get(0).getParent();
+		while ((node != null) && (node.getParent() != null)) {
+			node.updateValue(value, learningRate);
 			node = node.getParent();
 		}
+	}
 
+	/**
+	 * Removes the virtual loss the tree policy placed on the path below the
+	 * root
+	 */
+	private void revertVirtualLoss(List<MCTSNode> path) {
+		for (int i = 1; i < path.size(); i++) {
+			path.get(i).removeVirtualLoss();
+		}
 	}
 
+	/**
+	 * The best of the explored successors of the node, or of all of them if
+	 * none has been explored
+	 */
 	private MCTSNode bestSuccessor(MCTSNode node) {
-		List<MCTSNode> successors = new ArrayList<>(node.getSuccessors()
-				.keySet());
+		List<MCTSNode> successors = new ArrayList<>();
+		for (int slot = 0; slot < node.getSuccessorCount(); slot++) {
+			if (node.getSuccessorVisits(slot) > 0) {
+				successors.add(node.getSuccessor(slot));
+			}
+		}
+		if (successors.isEmpty()) {
+			successors = node.getSuccessorNodes();
+		}
 		Collections.sort(successors);
 		return successors.get(0);
 	}
+
+	/**
+	 * The policies and working storage of one search worker. Workers are
+	 * created once per solve and reused for every move.
+	 */
+	private class SearchWorker {
+
+		private TreeSearchPolicy treePolicy = null;
+		private IPolicy rolloutPolicy = null;
+		private List<IPolicy> leafRolloutPolicies = new ArrayList<>();
+		// Each leaf rollout evaluates on a relaxed planning graph of its own
+		private HeuristicEvaluator evaluator = null;
+		private List<HeuristicEvaluator> leafEvaluators = new ArrayList<>();
+		private List<PolicyTask> leafTasks = new ArrayList<>();
+		private List<Future<MCTSNode>> terminalStates = new ArrayList<>();
+
+		public SearchWorker(TreeSearchPolicy treePolicy, SplittableRandom random, double referenceHValue,
+				SearchContext context) {
+			this.treePolicy = treePolicy;
+			this.evaluator = context.newWorkerEvaluator();
+			treePolicy.setRandom(random.split());
+			treePolicy.setProgressiveWidening(wideningCoefficient, wideningExponent);
+			rolloutPolicy = createRolloutPolicy(referenceHValue);
+			rolloutPolicy.setRandom(random.split());
+			for (int i = 1; i < leafRollouts; i++) {
+				IPolicy leafRolloutPolicy = createRolloutPolicy(referenceHValue);
+				leafRolloutPolicy.setRandom(random.split());
+				leafRolloutPolicies.add(leafRolloutPolicy);
+				leafEvaluators.add(context.newWorkerEvaluator());
+			}
+		}
+
+		private IPolicy createRolloutPolicy(double referenceHValue) {
+			if (rolloutDepth > 0) {
+				return new RandomMCRolloutPolicy(rolloutDepth, referenceHValue);
+			}
+			return new RandomMCRolloutPolicy();
+		}
+
+		/**
+		 * Runs tree search, rollout and backup from the given root until the
+		 * move is over or the anytime deadline has passed.
+		 * @return the number of rollouts performed
+		 */
+		public long search(MCTSNode initialNode) throws Exception {
+			SearchContext context = initialNode.getContext();
+			HeuristicEvaluator previous = context.setWorkerEvaluator(evaluator);
+			try {
+				return searchFrom(initialNode);
+			} finally {
+				context.setWorkerEvaluator(previous);
+			}
+		}
+
+		private long searchFrom(MCTSNode initialNode) throws Exception {
+			long iterationStartTime = System.nanoTime();
+			long runningTime = 0;
+
+			long rollouts = 0;
+			long iterations = 0;
+			NodeBudget budget = initialNode.getContext().getNodeBudget();
+			// At least one rollout is made so that the root is always expanded.
+			// An interrupted search stops and leaves the solve to end.
+			while ((rollouts == 0)
+					|| (!isMoveOver(initialNode, runningTime, iterations)
+							&& (System.nanoTime() < deadline) && !Thread.currentThread().isInterrupted())) {
+				MCTSNode newNode = runTreeSearchPolicy(initialNode);
+				newNode.visited();
+				LOG.fine("Tree Policy Completed. " + "Rolling out from node with value: " + newNode.getValue());
+				double value = simulate(newNode);
+				LOG.fine("Rollout Completed. Terminal Node Value: " + value);
+				List<MCTSNode> path = treePolicy.getPath();
+				metrics.reachedDepth(path.size() - 1);
+				backup(path, value);
+				revertVirtualLoss(path);
+				if (budget != null) {
+					long tick = budget.tick();
+					for (MCTSNode node : path) {
+						node.touch(tick);
+					}
+					if (budget.isExceeded()) {
+						metrics.released(budget.evict(initialNode));
+					}
+				}
+				LOG.fine("Backup Completed. " + "New Node Value: " + newNode.getValue());
+				runningTime = System.nanoTime() - iterationStartTime;
+				rollouts += leafRollouts;
+				iterations++;
+			}
+			return rollouts;
+		}
+
+		/**
+		 * @param iterations made by this worker in the move
+		 */
+		private boolean isMoveOver(MCTSNode initialNode, long runningTime, long iterations) {
+			if (iterationsPerMove > 0) {
+				return iterations >= iterationsPerMove;
+			}
+			if (timeManager == null) {
+				return runningTime > MCTSPlanner.this.runningTime;
+			}
+			// Workers sharing the tree all back up into the root
+			int sharingWorkers = (parallelisation == ParallelisationEnum.TREE) ? numWorkers : 1;
+			return timeManager.isMoveOver(initialNode, runningTime, iterations * sharingWorkers);
+		}
+
+		private MCTSNode runTreeSearchPolicy(MCTSNode node) throws Exception {
+			return treePolicy.run(node);
+		}
+
+		/**
+		 * Estimates the value of the node, averaging over several parallel
+		 * rollouts when leaf parallelisation is enabled. One rollout always
+		 * runs on the calling worker.
+		 */
+		private double simulate(MCTSNode node) throws Exception {
+			if (leafRollouts == 1) {
+				return runRolloutPolicy(node).getValue();
+			}
+			leafTasks.clear();
+			terminalStates.clear();
+			ExecutorService executor = ExecutorFactory.getExecutor();
+			for (int i = 0; i < leafRolloutPolicies.size(); i++) {
+				PolicyTask leafTask = new PolicyTask(leafRolloutPolicies.get(i), node, leafEvaluators.get(i));
+				leafTasks.add(leafTask);
+				terminalStates.add(executor.submit(leafTask));
+			}
+			boolean completed = false;
+			try {
+				double totalValue = runRolloutPolicy(node).getValue();
+				for (Future<MCTSNode> terminalState : terminalStates) {
+					totalValue += terminalState.get().getValue();
+				}
+				completed = true;
+				return totalValue / leafRollouts;
+			} finally {
+				if (!completed) {
+					InterruptibleTask.cancelAll(leafTasks, terminalStates);
+				}
+			}
+		}
+
+		private MCTSNode runRolloutPolicy(MCTSNode node) throws Exception {
+			return rolloutPolicy.run(node);
+		}
+	}
+
+	private static class SearchTask extends InterruptibleTask<Long> {
+
+		private SearchWorker worker = null;
+		private MCTSNode root = null;
+
+		public SearchTask(SearchWorker worker, MCTSNode root) {
+			this.worker = worker;
+			this.root = root;
+		}
+
+		@Override
+		protected Long compute() throws Exception {
+			return worker.search(root);
+		}
+	}
+
+	private static class MergedStatistics {
+
+		private int visits = 0;
+		private int trees = 0;
+		private double weightedValue = 0.0;
+		private double totalValue = 0.0;
+
+		/**
+		 * @param successor null if the tree never created it
+		 */
+		public void add(MCTSNode successor, int visits) {
+			this.visits += visits;
+			if (successor == null) {
+				return;
+			}
+			this.trees++;
+			this.weightedValue += successor.getValue() * visits;
+			this.totalValue += successor.getValue();
+		}
+
+		public double getValue() {
+			if (visits > 0) {
+				return weightedValue / visits;
+			}
+			return totalValue / trees;
+		}
+	}
 }
@@ -0,0 +1,7 @@
+package org.cei.planner.mcts;
+
+public enum ParallelisationEnum {
+	NONE, // A single tree grown by a single worker
+	ROOT, // Independent trees per worker, merged at the root
+	TREE // A single tree shared by all workers
+}
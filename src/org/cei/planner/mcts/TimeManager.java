@@ -0,0 +1,163 @@
+package org.cei.planner.mcts;
+
+import java.util.logging.Logger;
+
+import org.cei.planner.data.MCTSNode;
+
+/**
+ * Splits a total solve budget across the moves of an MCTS search. Each move
+ * is given an equal share of the time left over the number of moves the
+ * heuristic value of its root suggests remain. A move stops early once the
+ * best successor leads by more visits than the rest of the move could give
+ * any other, and runs on past its share while the best two successors are
+ * close.
+ */
+public class TimeManager {
+
+	// Moves whose successors are close may run for this many shares
+	public static final double DEFAULT_EXTENSION = 2.0;
+	// Successors whose values are within this fraction of each other are close
+	public static final double DEFAULT_CLOSE_MARGIN = 0.05;
+	// Every move gets at least this fraction of the budget, even once it is spent
+	private static final double MIN_MOVE_FRACTION = 0.01;
+	// Iterations between checks of the successor statistics
+	private static final int CHECK_INTERVAL = 16;
+
+	private static final Logger LOG = Logger.getLogger(TimeManager.class.getName());
+
+	private long budget = 0;
+	private double extension = DEFAULT_EXTENSION;
+	private double closeMargin = DEFAULT_CLOSE_MARGIN;
+	private long solveStartTime = 0;
+	// Share of the current move and the most it may be extended to
+	private volatile long moveTime = 0;
+	private volatile long maxMoveTime = 0;
+
+	/**
+	 * @param budget nanoseconds for the whole solve
+	 */
+	public TimeManager(long budget) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("Time budget must be positive");
+		}
+		this.budget = budget;
+	}
+
+	public TimeManager(long budget, double extension, double closeMargin) {
+		this(budget);
+		if (extension < 1.0) {
+			throw new IllegalArgumentException("Extension must be at least 1");
+		}
+		if (closeMargin < 0.0) {
+			throw new IllegalArgumentException("Close margin must not be negative");
+		}
+		this.extension = extension;
+		this.closeMargin = closeMargin;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	public void startSolve() {
+		solveStartTime = System.nanoTime();
+	}
+
+	/**
+	 * Allocates the time of the move searched from the given root. Must be
+	 * called before the workers of the move start.
+	 */
+	public void startMove(MCTSNode root) {
+		long remaining = budget - (System.nanoTime() - solveStartTime);
+		double hValue = root.getHValue();
+		long movesLeft = (Double.isInfinite(hValue) || Double.isNaN(hValue)) ? 1
+				: Math.max(1, (long) Math.ceil(hValue));
+		long minMoveTime = (long) (budget * MIN_MOVE_FRACTION);
+		moveTime = Math.max(minMoveTime, remaining / movesLeft);
+		maxMoveTime = Math.max(moveTime, Math.min(remaining, (long) (moveTime * extension)));
+		LOG.fine("Move allocated " + (moveTime * Math.pow(10, -6)) + " ms of "
+				+ (remaining * Math.pow(10, -6)) + " ms remaining over " + movesLeft + " moves.");
+	}
+
+	/**
+	 * Whether the search of the current move should stop
+	 * @param root the root being searched
+	 * @param runningTime nanoseconds since the move started
+	 * @param iterations iterations backed up into the root since the move
+	 * started, counting those of every worker sharing the tree
+	 */
+	public boolean isMoveOver(MCTSNode root, long runningTime, long iterations) {
+		if (runningTime > maxMoveTime) {
+			return true;
+		}
+		if (runningTime > moveTime) {
+			return !isClose(root);
+		}
+		if ((iterations % CHECK_INTERVAL != 0) || (runningTime <= 0)) {
+			return false;
+		}
+		// Iterations still to come at the current rate
+		double remaining = (double) iterations * (moveTime - runningTime) / runningTime;
+		return cannotBeOvertaken(root, remaining);
+	}
+
+	/**
+	 * True when the explored successor with the highest value is also the
+	 * most visited, by a margin no other successor can make up in the given
+	 * number of iterations
+	 */
+	private boolean cannotBeOvertaken(MCTSNode root, double remaining) {
+		int successors = root.getSuccessorCount();
+		if (successors < 2) {
+			return successors == 1;
+		}
+		int best = -1;
+		// Unexplored successors count as unvisited
+		int mostVisits = 0;
+		int secondVisits = 0;
+		int mostVisited = -1;
+		for (int slot = 0; slot < successors; slot++) {
+			int visits = root.getSuccessorVisits(slot);
+			if (visits == 0) {
+				continue;
+			}
+			if (visits > mostVisits) {
+				secondVisits = mostVisits;
+				mostVisits = visits;
+				mostVisited = slot;
+			} else if (visits > secondVisits) {
+				secondVisits = visits;
+			}
+			if ((best < 0) || (root.getSuccessor(slot).getValue() > root.getSuccessor(best).getValue())) {
+				best = slot;
+			}
+		}
+		return (best == mostVisited) && (mostVisits - secondVisits > remaining);
+	}
+
+	/**
+	 * True when the two highest valued explored successors are within the
+	 * close margin of each other
+	 */
+	private boolean isClose(MCTSNode root) {
+		int successors = root.getSuccessorCount();
+		if (successors < 2) {
+			return false;
+		}
+		double best = Double.NEGATIVE_INFINITY;
+		double second = Double.NEGATIVE_INFINITY;
+		for (int slot = 0; slot < successors; slot++) {
+			if (root.getSuccessorVisits(slot) == 0) {
+				continue;
+			}
+			double value = root.getSuccessor(slot).getValue();
+			if (value > best) {
+				second = best;
+				best = value;
+			} else if (value > second) {
+				second = value;
+			}
+		}
+		return (best - second) <= closeMargin * Math.max(Math.abs(best), Math.abs(second));
+	}
+}
@@ -0,0 +1,235 @@
+package org.cei.planner.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters describing the progress of a search, shared by every worker of a
+ * planner. Counters are striped so that workers rarely contend on them.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+
+	private static final String DOMAIN = "org.cei.planner";
+
+	private LongAdder nodesCreated = new LongAdder();
+	private LongAdder treeNodes = new LongAdder();
+	private LongAdder expansions = new LongAdder();
+	private LongAdder rollouts = new LongAdder();
+	private LongAdder rolloutSteps = new LongAdder();
+	private LongAdder heuristicEvaluations = new LongAdder();
+	private LongAdder heuristicCacheHits = new LongAdder();
+	private AtomicLong treeDepth = new AtomicLong();
+	private volatile long startTime = System.nanoTime();
+	private ObjectName objectName = null;
+
+	public void nodeCreated() {
+		nodesCreated.increment();
+	}
+
+	/**
+	 * Records the expansion of a node
+	 * @param successorsCreated the number of successor nodes the expansion
+	 * added to the tree
+	 */
+	public void expanded(int successorsCreated) {
+		expansions.increment();
+		treeNodes.add(successorsCreated);
+	}
+
+	/**
+	 * Records successor nodes added to the tree after the expansion of
+	 * their parent, when successors are created as they are first visited
+	 */
+	public void successorsCreated(int successors) {
+		treeNodes.add(successors);
+	}
+
+	/**
+	 * Records nodes that are no longer part of the search tree
+	 */
+	public void released(long nodes) {
+		treeNodes.add(-nodes);
+	}
+
+	/**
+	 * Replaces the count of nodes in the search tree, once it has been
+	 * counted afresh
+	 */
+	public void setTreeNodes(long nodes) {
+		treeNodes.reset();
+		treeNodes.add(nodes);
+	}
+
+	/**
+	 * Records a rollout or random walk
+	 * @param depth the number of actions applied
+	 */
+	public void rolloutCompleted(long depth) {
+		rollouts.increment();
+		rolloutSteps.add(depth);
+	}
+
+	public void heuristicEvaluated() {
+		heuristicEvaluations.increment();
+	}
+
+	public void heuristicCacheHit() {
+		heuristicCacheHits.increment();
+	}
+
+	/**
+	 * Records the depth below the root reached by the tree policy
+	 */
+	public void reachedDepth(long depth) {
+		long current = treeDepth.get();
+		while ((depth > current) && !treeDepth.compareAndSet(current, depth)) {
+			current = treeDepth.get();
+		}
+	}
+
+	public void resetTreeDepth() {
+		treeDepth.set(0);
+	}
+
+	public void reset() {
+		nodesCreated.reset();
+		treeNodes.reset();
+		expansions.reset();
+		rollouts.reset();
+		rolloutSteps.reset();
+		heuristicEvaluations.reset();
+		heuristicCacheHits.reset();
+		treeDepth.set(0);
+		startTime = System.nanoTime();
+	}
+
+	@Override
+	public long getNodesCreated() {
+		return nodesCreated.sum();
+	}
+
+	/**
+	 * The number of nodes held in the search tree. Nodes created by rollouts
+	 * are not part of the tree.
+	 */
+	@Override
+	public long getNodesAlive() {
+		return treeNodes.sum();
+	}
+
+	@Override
+	public long getExpansions() {
+		return expansions.sum();
+	}
+
+	@Override
+	public double getExpansionsPerSecond() {
+		return perSecond(expansions.sum());
+	}
+
+	@Override
+	public long getRollouts() {
+		return rollouts.sum();
+	}
+
+	@Override
+	public double getRolloutsPerSecond() {
+		return perSecond(rollouts.sum());
+	}
+
+	@Override
+	public double getAverageRolloutDepth() {
+		long rollouts = this.rollouts.sum();
+		if (rollouts == 0) {
+			return 0.0;
+		}
+		return (double) rolloutSteps.sum() / rollouts;
+	}
+
+	@Override
+	public long getHeuristicEvaluations() {
+		return heuristicEvaluations.sum();
+	}
+
+	@Override
+	public double getHeuristicEvaluationsPerSecond() {
+		return perSecond(heuristicEvaluations.sum());
+	}
+
+	@Override
+	public long getHeuristicCacheHits() {
+		return heuristicCacheHits.sum();
+	}
+
+	/**
+	 * The fraction of heuristic values that were found in the heuristic
+	 * cache rather than evaluated
+	 */
+	@Override
+	public double getHeuristicCacheHitRate() {
+		long hits = heuristicCacheHits.sum();
+		long lookups = hits + heuristicEvaluations.sum();
+		if (lookups == 0) {
+			return 0.0;
+		}
+		return (double) hits / lookups;
+	}
+
+	/**
+	 * The deepest the tree policy has descended below the root since the
+	 * depth was last reset, normally at the start of the current move
+	 */
+	@Override
+	public long getTreeDepth() {
+		return treeDepth.get();
+	}
+
+	/**
+	 * Milliseconds since the metrics were last reset
+	 */
+	@Override
+	public double getElapsedTime() {
+		return (System.nanoTime() - startTime) * Math.pow(10, -6);
+	}
+
+	private double perSecond(long count) {
+		long elapsed = System.nanoTime() - startTime;
+		if (elapsed <= 0) {
+			return 0.0;
+		}
+		return count / (elapsed * Math.pow(10, -9));
+	}
+
+	/**
+	 * Exposes the metrics on the platform MBean server under the given name,
+	 * replacing any metrics already registered under it
+	 * @throws JMException
+	 */
+	public synchronized void register(String name) throws JMException {
+		unregister();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(DOMAIN + ":type=SearchMetrics,name="
+				+ ObjectName.quote(name));
+		if (server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		server.registerMBean(this, objectName);
+		this.objectName = objectName;
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (objectName == null) {
+			return;
+		}
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if (server.isRegistered(objectName)) {
+			server.unregisterMBean(objectName);
+		}
+		objectName = null;
+	}
+}
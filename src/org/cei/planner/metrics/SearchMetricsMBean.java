@@ -0,0 +1,35 @@
+package org.cei.planner.metrics;
+
+/**
+ * The search metrics of a planner as exposed over JMX. Rates are averaged
+ * over the time since the metrics were last reset, normally the start of
+ * the current solve.
+ */
+public interface SearchMetricsMBean {
+
+	public long getNodesCreated();
+
+	public long getNodesAlive();
+
+	public long getExpansions();
+
+	public double getExpansionsPerSecond();
+
+	public long getRollouts();
+
+	public double getRolloutsPerSecond();
+
+	public double getAverageRolloutDepth();
+
+	public long getHeuristicEvaluations();
+
+	public double getHeuristicEvaluationsPerSecond();
+
+	public long getHeuristicCacheHits();
+
+	public double getHeuristicCacheHitRate();
+
+	public long getTreeDepth();
+
+	public double getElapsedTime();
+}
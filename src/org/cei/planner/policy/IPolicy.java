@@ -1,9 +1,24 @@
 package org.cei.planner.policy;
 
-import java.util.concurrent.Callable;
+import java.util.SplittableRandom;
 
 import org.cei.planner.data.MCTSNode;
 
-public interface IPolicy extends Callable<MCTSNode> {
+/**
+ * A search policy. Implementations are configured once and then run from
+ * many start nodes, so they may keep working storage between runs. They are
+ * not thread safe; each worker uses its own instance.
+ */
+public interface IPolicy {
 
+	public MCTSNode run(MCTSNode node) throws Exception;
+
+	/**
+	 * Sets the source of every random choice the policy makes. The source
+	 * is used without locking, so it must not be shared with a policy run
+	 * on another thread; give each policy its own split of a seeded source
+	 * to make its runs reproducible.
+	 * @param random
+	 */
+	public void setRandom(SplittableRandom random);
 }
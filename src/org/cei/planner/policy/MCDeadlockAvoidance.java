@@ -1,12 +1,15 @@
 package org.cei.planner.policy;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SplittableRandom;
 
 import org.cei.planner.data.MCTSNode;
 import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.metrics.SearchMetrics;
 import org.cei.planner.util.SoftmaxSelectionHelper;
 
 public class MCDeadlockAvoidance extends PureRandomWalk {
@@ -14,15 +17,14 @@ public class MCDeadlockAvoidance extends PureRandomWalk {
 	private static final StateValuePolicyEnum STATE_VALUE_POLICY = StateValuePolicyEnum.WIN_LOSS_ACTION;
 		
 	private SoftmaxSelectionHelper softmaxSelection = new SoftmaxSelectionHelper();
-	private Map<MCTSNode, MCTSNode> visited = null;
+	private Map<MCTSNode, MCTSNode> visited = new HashMap<>();
+	private List<MCTSNode> uniqueSuccessors = new ArrayList<>();
 	
-	public MCDeadlockAvoidance(MCTSNode node) {
-		super(node);
-		this.visited = new HashMap<>();
+	public MCDeadlockAvoidance() {
 	}
 
-	public MCDeadlockAvoidance(MCTSNode node, int numWalks, int lengthWalk, double alpha, double extendingRate) {
-		super(node, numWalks, lengthWalk, alpha, extendingRate);
+	public MCDeadlockAvoidance(int numWalks, int lengthWalk, double alpha, double extendingRate) {
+		super(numWalks, lengthWalk, alpha, extendingRate);
 	}
 	
 	@Override
@@ -31,18 +33,34 @@ public class MCDeadlockAvoidance extends PureRandomWalk {
 	}
 	
 	@Override
-	public MCTSNode call() throws Exception {
-		initialiseTempVars();
+	public void setRandom(SplittableRandom random) {
+		super.setRandom(random);
+		softmaxSelection.setRandom(random);
+	}
+
+	@Override
+	public MCTSNode run(MCTSNode node) throws Exception {
+		initialiseTempVars(node);
 		MCTSNode hMinNode = null;
+		SearchMetrics metrics = node.getMetrics();
 		for (int i = 0; i < numWalks; i++) {
 			MCTSNode currentNode = initialNode;
 			for (int j = 0; j < walkLength; j++) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException("Walk cancelled");
+				}
 				currentNode = getSuccessor(currentNode);
 				currentNode.visited();
 				if (currentNode.isGoal()) {
+					if (metrics != null) {
+						metrics.rolloutCompleted(j + 1);
+					}
 					return currentNode;
 				}
 			}
+			if (metrics != null) {
+				metrics.rolloutCompleted(walkLength);
+			}
 			if (hasMadeAcceptableProgress(currentNode)) {
 				currentNode.selected();
 				return currentNode;
@@ -64,22 +82,20 @@ public class MCDeadlockAvoidance extends PureRandomWalk {
 	}
 	
 	@Override
-	protected void initialiseTempVars() {
-		super.initialiseTempVars();
-		this.visited = new HashMap<>();
+	protected void initialiseTempVars(MCTSNode node) {
+		super.initialiseTempVars(node);
+		visited.clear();
 		visited.put(initialNode, initialNode);
 	}
 
-	@Override
 	protected MCTSNode getSuccessor(MCTSNode node) {
-		List<MCTSNode> successors = new ArrayList<>(node.getSuccessors().keySet());
-		successors = removeDuplicates(successors);
+		List<MCTSNode> successors = removeDuplicates(node.getSuccessorNodes());
 		MCTSNode successor = softmaxSelection.softmaxQValueSelection(successors);
 		return successor;
 	}
 
-	protected List<MCTSNode> removeDuplicates(List<MCTSNode> successors) {
-		List<MCTSNode> uniqueSuccessors = new ArrayList<>();
+	protected List<MCTSNode> removeDuplicates(Collection<MCTSNode> successors) {
+		uniqueSuccessors.clear();
 		for (MCTSNode successor : successors) {
 			MCTSNode visitedNode = visited.get(successor);
 			if (visitedNode != null) {
@@ -1,13 +1,19 @@
 package org.cei.planner.policy;
 
+import java.util.SplittableRandom;
+
 import org.cei.planner.data.MCTSNode;
 
 public class MCHelpfulActions implements IPolicy {
 
 	@Override
-	public MCTSNode call() throws Exception {
+	public MCTSNode run(MCTSNode node) throws Exception {
 		// TODO Auto-generated method stub
 		return null;
 	}
 
+	@Override
+	public void setRandom(SplittableRandom random) {
+	}
+
 }
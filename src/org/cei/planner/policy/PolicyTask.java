@@ -0,0 +1,44 @@
+package org.cei.planner.policy;
+
+import org.cei.planner.data.HeuristicEvaluator;
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.SearchContext;
+import org.cei.planner.executor.InterruptibleTask;
+
+/**
+ * Runs a policy from a start node as a task for an executor
+ */
+public class PolicyTask extends InterruptibleTask<MCTSNode> {
+
+	private IPolicy policy = null;
+	private MCTSNode node = null;
+	private HeuristicEvaluator evaluator = null;
+
+	public PolicyTask(IPolicy policy, MCTSNode node) {
+		this.policy = policy;
+		this.node = node;
+	}
+
+	/**
+	 * @param evaluator the policy evaluates heuristic values with, or null to
+	 *        evaluate them under the heuristic lock of the search
+	 */
+	public PolicyTask(IPolicy policy, MCTSNode node, HeuristicEvaluator evaluator) {
+		this(policy, node);
+		this.evaluator = evaluator;
+	}
+
+	@Override
+	protected MCTSNode compute() throws Exception {
+		SearchContext context = node.getContext();
+		if ((context == null) || (evaluator == null)) {
+			return policy.run(node);
+		}
+		HeuristicEvaluator previous = context.setWorkerEvaluator(evaluator);
+		try {
+			return policy.run(node);
+		} finally {
+			context.setWorkerEvaluator(previous);
+		}
+	}
+}
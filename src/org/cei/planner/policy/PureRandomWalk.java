@@ -1,14 +1,20 @@
 package org.cei.planner.policy;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
-import javaff.data.Action;
-import javaff.planning.State;
-
+import org.cei.planner.data.HeuristicEvaluator;
 import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.SearchContext;
 import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.executor.ExecutorFactory;
+import org.cei.planner.executor.InterruptibleTask;
+import org.cei.planner.metrics.SearchMetrics;
 
 public class PureRandomWalk implements IPolicy {
 
@@ -17,8 +23,6 @@ public class PureRandomWalk implements IPolicy {
 	public static final double DEFAULT_ALPHA = 0.9;
 	public static final double DEFAULT_EXTENDING_RATE = 1.5;
 
-	protected static final Random RAND = new Random(System.nanoTime());
-
 	protected static final Logger LOG = Logger.getLogger(PureRandomWalk.class
 			.getName());
 	private static final StateValuePolicyEnum STATE_VALUE_POLICY = StateValuePolicyEnum.H_VALUE;
@@ -34,14 +38,21 @@ public class PureRandomWalk implements IPolicy {
 	protected double oldHMin = 0.0;
 	private double acceptableProgress = 0.0;
 	protected int walkLength = 0;
+	private RolloutEngine engine = new RolloutEngine();
+	private int parallelism = 1;
+	protected SplittableRandom random = new SplittableRandom();
+	// Engines of the other walkers in parallel mode
+	private List<RolloutEngine> parallelEngines = new ArrayList<>();
+	// Each other walker evaluates on a relaxed planning graph of its own
+	private List<HeuristicEvaluator> parallelEvaluators = new ArrayList<>();
+	private List<WalkTask> walkTasks = new ArrayList<>();
+	private List<Future<Void>> walkers = new ArrayList<>();
 
-	public PureRandomWalk(MCTSNode node) {
-		this.initialNode = node;
+	public PureRandomWalk() {
 	}
 
-	public PureRandomWalk(MCTSNode node, int numWalks, int lengthWalk,
+	public PureRandomWalk(int numWalks, int lengthWalk,
 			double alpha, double extendingRate) {
-		this(node);
 		this.numWalks = numWalks;
 		this.lengthWalk = lengthWalk;
 		this.alpha = alpha;
@@ -52,17 +63,56 @@ public class PureRandomWalk implements IPolicy {
 		return STATE_VALUE_POLICY;
 	}
 
+	/**
+	 * Sets the number of walkers sharing the walks of each run. Walkers
+	 * merge the end of each walk into the shared record, and all stop as
+	 * soon as one reaches a goal or makes acceptable progress. Each walker
+	 * evaluates heuristic values with its own relaxed planning graph when
+	 * the search provides one. With a single walker the walks run one after
+	 * another on the calling thread.
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Number of walkers must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Walks on the calling thread draw from the given source. In parallel
+	 * mode each other walker draws from its own split of it.
+	 */
+	@Override
+	public void setRandom(SplittableRandom random) {
+		this.random = random;
+		engine.setRandom(random);
+		parallelEngines.clear();
+	}
+
 	@Override
-	public MCTSNode call() throws Exception {
-		initialiseTempVars();
+	public MCTSNode run(MCTSNode node) throws Exception {
+		initialiseTempVars(node);
+		if (parallelism > 1) {
+			return runParallel();
+		}
 		MCTSNode hMinNode = null;
+		SearchMetrics metrics = node.getMetrics();
 		for (int i = 0; i < numWalks; i++) {
-			MCTSNode currentNode = initialNode;
-			for (int j = 0; j < walkLength; j++) {
-				currentNode = getSuccessor(currentNode);
-				if (currentNode.isGoal()) {
-					return currentNode;
-				}
+			// Only the end of the walk is kept as a node
+			MCTSNode currentNode = engine.run(initialNode, walkLength, STATE_VALUE_POLICY);
+			if (Thread.interrupted()) {
+				throw new InterruptedException("Walk cancelled");
+			}
+			if (metrics != null) {
+				metrics.rolloutCompleted(engine.getSteps());
+			}
+			if (currentNode.isGoal()) {
+				return currentNode;
 			}
 			if (hasMadeAcceptableProgress(currentNode)) {
 				return currentNode;
@@ -82,7 +132,99 @@ public class PureRandomWalk implements IPolicy {
 		return hMinNode;
 	}
 
-	protected void initialiseTempVars() {
+	/**
+	 * Shares the walks between the calling thread and the other walkers
+	 */
+	private MCTSNode runParallel() throws Exception {
+		while (parallelEngines.size() < parallelism - 1) {
+			RolloutEngine parallelEngine = new RolloutEngine();
+			parallelEngine.setRandom(random.split());
+			parallelEngines.add(parallelEngine);
+		}
+		SearchContext context = initialNode.getContext();
+		while (parallelEvaluators.size() < parallelism - 1) {
+			parallelEvaluators.add((context == null) ? null : context.newWorkerEvaluator());
+		}
+		ParallelWalk walk = new ParallelWalk();
+		walkTasks.clear();
+		walkers.clear();
+		for (int i = 0; i < parallelism - 1; i++) {
+			walkTasks.add(new WalkTask(parallelEngines.get(i), parallelEvaluators.get(i), walk));
+			walkers.add(ExecutorFactory.getExecutor().submit(walkTasks.get(i)));
+		}
+		boolean completed = false;
+		try {
+			walk(engine, walk);
+			if (Thread.interrupted()) {
+				throw new InterruptedException("Walk cancelled");
+			}
+			// Walkers see the walk is finished before starting another
+			for (Future<Void> walker : walkers) {
+				walker.get();
+			}
+			completed = true;
+		} finally {
+			if (!completed) {
+				InterruptibleTask.cancelAll(walkTasks, walkers);
+			}
+		}
+		if (walk.result.get() != null) {
+			return walk.result.get();
+		}
+		if (walk.hMinNode == null) {
+			return initialNode;
+		}
+		return walk.hMinNode;
+	}
+
+	/**
+	 * Performs walks until none remain, the walk is finished or the thread
+	 * is interrupted. The record of the run is updated under the lock of
+	 * the policy; walks and heuristic evaluations happen outside it.
+	 */
+	private void walk(RolloutEngine engine, ParallelWalk walk) {
+		SearchMetrics metrics = initialNode.getMetrics();
+		while ((walk.result.get() == null) && !Thread.currentThread().isInterrupted()
+				&& (walk.started.getAndIncrement() < numWalks)) {
+			int length = 0;
+			synchronized (this) {
+				length = walkLength;
+			}
+			MCTSNode currentNode = engine.run(initialNode, length, STATE_VALUE_POLICY);
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			if (metrics != null) {
+				metrics.rolloutCompleted(engine.getSteps());
+			}
+			if (currentNode.isGoal()) {
+				walk.result.compareAndSet(null, currentNode);
+				return;
+			}
+			if (walk.result.get() != null) {
+				return;
+			}
+			double hValue = currentNode.getHValue();
+			synchronized (this) {
+				if (walk.result.get() != null) {
+					return;
+				}
+				if (hasMadeAcceptableProgress(currentNode)) {
+					walk.result.compareAndSet(null, currentNode);
+					return;
+				}
+				if (hValue < hMin) {
+					hMin = hValue;
+					walk.hMinNode = currentNode;
+					LOG.fine("Random Walk found better state.");
+				}
+				performIterativeDeepening();
+			}
+		}
+	}
+
+	protected void initialiseTempVars(MCTSNode node) {
+		this.initialNode = node;
 		this.hMin = Double.MAX_VALUE;
 		this.oldHMin = hMin;
 		this.acceptableProgress = Math.max(0, hMin - initialNode.getHValue());
@@ -113,12 +255,44 @@ public class PureRandomWalk implements IPolicy {
 		return false;
 	}
 
-	protected MCTSNode getSuccessor(MCTSNode node) {
-		List<Action> actions = node.getActions();
-		Action nextAction = actions.get(RAND.nextInt(actions.size()));
-		State nextState = node.getState().apply(nextAction);
-		MCTSNode nextNode = new MCTSNode(nextState, node, STATE_VALUE_POLICY);
-		node = nextNode;
-		return node;
+	/**
+	 * The shared progress of a run in parallel mode
+	 */
+	private static class ParallelWalk {
+
+		private AtomicInteger started = new AtomicInteger();
+		// The goal or acceptable progress that ends the run
+		private AtomicReference<MCTSNode> result = new AtomicReference<>();
+		// Guarded by the lock of the policy
+		private MCTSNode hMinNode = null;
+	}
+
+	private class WalkTask extends InterruptibleTask<Void> {
+
+		private RolloutEngine engine = null;
+		private HeuristicEvaluator evaluator = null;
+		private ParallelWalk walk = null;
+
+		public WalkTask(RolloutEngine engine, HeuristicEvaluator evaluator, ParallelWalk walk) {
+			this.engine = engine;
+			this.evaluator = evaluator;
+			this.walk = walk;
+		}
+
+		@Override
+		protected Void compute() throws Exception {
+			SearchContext context = initialNode.getContext();
+			if ((context == null) || (evaluator == null)) {
+				walk(engine, walk);
+				return null;
+			}
+			HeuristicEvaluator previous = context.setWorkerEvaluator(evaluator);
+			try {
+				walk(engine, walk);
+			} finally {
+				context.setWorkerEvaluator(previous);
+			}
+			return null;
+		}
 	}
 }
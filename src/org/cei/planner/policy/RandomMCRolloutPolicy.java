@@ -1,47 +1,89 @@
 package org.cei.planner.policy;
 
-import java.util.List;
-import java.util.Random;
-
-import javaff.data.Action;
-import javaff.planning.State;
+import java.util.SplittableRandom;
 
 import org.cei.planner.data.MCTSNode;
 import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.metrics.SearchMetrics;
 
+/**
+ * Plays random actions from a node. By default the rollout runs until a
+ * goal or dead end is reached and scores 1 for a goal and 0 otherwise.
+ * Given a depth and a reference heuristic value, the rollout is instead cut
+ * off after that many steps and the state reached is scored by its
+ * heuristic value, normalised against the reference to lie in [0, 1].
+ */
 public class RandomMCRolloutPolicy implements IPolicy {
 
-	private static final Random RAND = new Random(System.nanoTime());
-	private static final StateValuePolicyEnum STATE_VALUE_POLICY = StateValuePolicyEnum.WIN_LOSS_STATE;
-	
-	private MCTSNode initialNode = null; 
+	private StateValuePolicyEnum stateValuePolicy = StateValuePolicyEnum.WIN_LOSS_STATE;
 	private Long maxIterations = null;
-	
-	public RandomMCRolloutPolicy(MCTSNode node) {
-		this.initialNode = node;
+	private double referenceHValue = 0.0;
+	private RolloutEngine engine = new RolloutEngine();
+
+	public RandomMCRolloutPolicy() {
 	}
-	
-	public RandomMCRolloutPolicy(MCTSNode node, Long maxIterations) {
-		this(node);
+
+	public RandomMCRolloutPolicy(Long maxIterations) {
 		this.maxIterations = maxIterations;
 	}
-	
+
+	/**
+	 * Cuts rollouts off after the given number of steps and values the
+	 * state reached by its heuristic value h as 1 - h / (reference + 1).
+	 * Goals score 1, and dead ends and states at least as far from the goal
+	 * as the reference score 0. Heuristic values are read through the
+	 * heuristic cache of the search, if it has one, and are otherwise
+	 * evaluated with the evaluator bound to the worker, or under the
+	 * heuristic lock of the search, so policies of parallel workers may
+	 * share a problem.
+	 * @param maxIterations steps before the rollout is cut off
+	 * @param referenceHValue usually that of the initial state, so every
+	 *        rollout of a solve is scored on the same scale
+	 */
+	public RandomMCRolloutPolicy(long maxIterations, double referenceHValue) {
+		if (maxIterations < 1) {
+			throw new IllegalArgumentException("Rollout depth must be positive");
+		}
+		if (!(referenceHValue >= 0.0) || Double.isInfinite(referenceHValue)) {
+			throw new IllegalArgumentException("Reference heuristic value must be finite and not negative");
+		}
+		this.maxIterations = maxIterations;
+		this.referenceHValue = referenceHValue;
+		this.stateValuePolicy = StateValuePolicyEnum.H_VALUE;
+	}
+
 	@Override
-	public MCTSNode call() throws Exception {
-		MCTSNode currentNode = initialNode;
-		long iterations = 0;
-		while (!currentNode.isTerminal()) {
-			if ((maxIterations != null) && (maxIterations.compareTo(iterations) <= 0)) {
-				break;
-			}			
-			List<Action> actions = currentNode.getActions();
-			Action nextAction = actions.get(RAND.nextInt(actions.size()));
-			State nextState = currentNode.getState().apply(nextAction);
-			MCTSNode nextNode = new MCTSNode(nextState, currentNode, STATE_VALUE_POLICY);
-			currentNode = nextNode;
-			iterations++;
+	public MCTSNode run(MCTSNode node) throws Exception {
+		long maxSteps = (maxIterations == null) ? -1 : maxIterations;
+		MCTSNode currentNode = engine.run(node, maxSteps, stateValuePolicy);
+		if (Thread.interrupted()) {
+			throw new InterruptedException("Rollout cancelled");
+		}
+		currentNode.setValue(getLeafValue(currentNode, maxSteps));
+		SearchMetrics metrics = node.getMetrics();
+		if (metrics != null) {
+			metrics.rolloutCompleted(engine.getSteps());
 		}
-		currentNode.setValue(currentNode.isGoal() ? 1.0 : 0.0);
 		return currentNode;
 	}
+
+	private double getLeafValue(MCTSNode node, long maxSteps) {
+		if (node.isGoal()) {
+			return 1.0;
+		}
+		// A rollout that stopped short of its depth reached a dead end
+		if ((stateValuePolicy != StateValuePolicyEnum.H_VALUE) || (engine.getSteps() < maxSteps)) {
+			return 0.0;
+		}
+		double hValue = node.getHValue();
+		if (Double.isInfinite(hValue)) {
+			return 0.0;
+		}
+		return Math.max(0.0, 1.0 - (hValue / (referenceHValue + 1.0)));
+	}
+
+	@Override
+	public void setRandom(SplittableRandom random) {
+		engine.setRandom(random);
+	}
 }
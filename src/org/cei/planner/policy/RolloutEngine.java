@@ -0,0 +1,121 @@
+package org.cei.planner.policy;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import javaff.data.Action;
+import javaff.planning.NullFilter;
+import javaff.planning.State;
+
+import org.cei.planner.data.BitState;
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.StateValuePolicyEnum;
+
+/**
+ * Plays random actions from a node without building a node per step. On
+ * compiled problems a single working state is updated in place and only
+ * the actions taken are recorded; on JavaFF problems only the current state
+ * is kept. A node is created for the final state alone.
+ * 
+ * An engine holds working storage, so it may be reused but must not be
+ * shared between threads.
+ */
+public class RolloutEngine {
+
+	// Steps between checks for interruption of the running thread
+	private static final int INTERRUPT_CHECK_MASK = 0xFF;
+
+	private long[] bits = new long[0];
+	private int[] applicable = new int[0];
+	private int[] actions = new int[16];
+	private long steps = 0;
+	private SplittableRandom random = new SplittableRandom();
+
+	/**
+	 * Plays random actions from the node until a goal or a state without
+	 * applicable actions is reached, or the maximum number of steps has
+	 * been taken. A run stops early if its thread is interrupted, leaving
+	 * the interrupt for the caller to act on.
+	 * @param maxSteps or a negative number for no maximum
+	 * @return a node on the final state, or the node itself if no action
+	 *         was taken
+	 */
+	public MCTSNode run(MCTSNode node, long maxSteps, StateValuePolicyEnum stateValuePolicy) {
+		steps = 0;
+		if (node.isCompiled()) {
+			return runCompiled(node, maxSteps, stateValuePolicy);
+		}
+		State state = node.getState();
+		while (((maxSteps < 0) || (steps < maxSteps)) && !state.goalReached() && !isInterrupted()) {
+			Set<Action> stateActions = NullFilter.getInstance().getActions(state);
+			if (stateActions.isEmpty()) {
+				break;
+			}
+			state = state.apply(getRandom(stateActions));
+			steps++;
+		}
+		if (steps == 0) {
+			return node;
+		}
+		return new MCTSNode(state, node, stateValuePolicy);
+	}
+
+	private MCTSNode runCompiled(MCTSNode node, long maxSteps, StateValuePolicyEnum stateValuePolicy) {
+		CompiledProblem problem = node.getContext().getCompiledProblem();
+		if (applicable.length < problem.getNumActions()) {
+			applicable = new int[problem.getNumActions()];
+		}
+		if (bits.length != problem.getWords()) {
+			bits = new long[problem.getWords()];
+		}
+		System.arraycopy(node.getBitState().getBits(), 0, bits, 0, bits.length);
+		while (((maxSteps < 0) || (steps < maxSteps)) && !problem.isGoal(bits) && !isInterrupted()) {
+			int count = problem.getApplicableActions(bits, applicable);
+			if (count == 0) {
+				break;
+			}
+			int action = applicable[random.nextInt(count)];
+			problem.applyInPlace(bits, action);
+			if (steps == actions.length) {
+				actions = Arrays.copyOf(actions, actions.length * 2);
+			}
+			actions[(int) steps++] = action;
+		}
+		if (steps == 0) {
+			return node;
+		}
+		return new MCTSNode(new BitState(bits.clone()), node,
+				Arrays.copyOf(actions, (int) steps), stateValuePolicy);
+	}
+
+	private boolean isInterrupted() {
+		return ((steps & INTERRUPT_CHECK_MASK) == 0) && Thread.currentThread().isInterrupted();
+	}
+
+	private Action getRandom(Set<Action> actions) {
+		int index = random.nextInt(actions.size());
+		Iterator<Action> iterator = actions.iterator();
+		for (int i = 0; i < index; i++) {
+			iterator.next();
+		}
+		return iterator.next();
+	}
+
+	/**
+	 * Sets the source of the actions played. Unless set, the engine draws
+	 * from an unseeded source of its own.
+	 */
+	public void setRandom(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * The number of actions taken by the last run
+	 */
+	public long getSteps() {
+		return steps;
+	}
+}
@@ -1,49 +1,55 @@
 package org.cei.planner.policy;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import org.cei.planner.data.MCTSNode;
 import org.cei.planner.util.SoftmaxSelectionHelper;
 
-public class SoftmaxTreeSearchPolicy implements IPolicy {
+public class SoftmaxTreeSearchPolicy extends TreeSearchPolicy {
 
-	private static final Random RAND = new Random(System.nanoTime());
-	 
-	private SoftmaxSelectionHelper softmaxSelection = new SoftmaxSelectionHelper();
-	private MCTSNode initialNode = null; 
+	private SoftmaxSelectionHelper softmaxSelection = null;
 	
-	public SoftmaxTreeSearchPolicy(MCTSNode node) {
-		this.initialNode = node;
+	public SoftmaxTreeSearchPolicy() {
+		this.softmaxSelection = new SoftmaxSelectionHelper();
 	}
 	
-	@Override
-	public MCTSNode call() throws Exception {
-		return search(initialNode);
+	public SoftmaxTreeSearchPolicy(double temperature) {
+		this.softmaxSelection = new SoftmaxSelectionHelper(temperature);
 	}
 	
-	private MCTSNode search(MCTSNode node) {
-		Map<MCTSNode, Integer> successors = node.getSuccessors();
-		List<MCTSNode> unexplored = getUnexploredSuccessors(successors);
-		// If there are unexplored add them to the tree
-		if (!unexplored.isEmpty()) {
-			MCTSNode selected = unexplored.get(RAND.nextInt(unexplored.size()));
-			return selected;
-		}
-		MCTSNode selectedNode = softmaxSelection.softmaxValueSelection(successors.keySet());
-		return search(selectedNode);
+	@Override
+	public void setRandom(SplittableRandom random) {
+		super.setRandom(random);
+		softmaxSelection.setRandom(random);
 	}
 
-	private List<MCTSNode> getUnexploredSuccessors(
-			Map<MCTSNode, Integer> successors) {
-		List<MCTSNode> unexplored = new ArrayList<MCTSNode>();
-		for (MCTSNode node : successors.keySet()) {
-			if (successors.get(node) == 0) {
-				unexplored.add(node);
+	@Override
+	protected MCTSNode search(MCTSNode node) {
+		int unexplored = getUnexploredSuccessors(node);
+		// If there are unexplored add them to the tree
+		if (unexplored > 0) {
+			int slot = getUnexplored(random.nextInt(unexplored));
+			MCTSNode selected = node.getSuccessor(slot);
+			// A transposition back onto the path ends the descent unvisited
+			if (isOnPath(selected)) {
+				return node;
 			}
+			//Increment action visit count n(s,a)
+			node.visited(slot);
+			return descend(selected);
+		}
+		int slot = softmaxSelection.softmaxValueSelection(node);
+		// A dead end is a leaf
+		if (slot < 0) {
+			return node;
+		}
+		MCTSNode selectedNode = node.getSuccessor(slot);
+		// A transposition back onto the path ends the descent unvisited
+		if (isOnPath(selectedNode)) {
+			return node;
 		}
-		return unexplored;
+		//Increment action visit count n(s,a)
+		node.visited(slot);
+		return search(descend(selectedNode));
 	}
 }
\ No newline at end of file
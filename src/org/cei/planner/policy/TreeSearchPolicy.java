@@ -0,0 +1,126 @@
+package org.cei.planner.policy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.cei.planner.data.MCTSNode;
+
+/**
+ * Base for policies that descend the search tree to a leaf. The nodes
+ * descended through are recorded so the result of the leaf can be backed up
+ * along the path actually taken, which matters once nodes are shared
+ * between parents.
+ */
+public abstract class TreeSearchPolicy implements IPolicy {
+
+	private List<MCTSNode> path = new ArrayList<MCTSNode>();
+	private Set<MCTSNode> pathNodes = Collections
+			.newSetFromMap(new IdentityHashMap<MCTSNode, Boolean>());
+	private int[] unexplored = new int[0];
+	// Progressive widening is off while the coefficient is 0
+	private double wideningCoefficient = 0.0;
+	private double wideningExponent = 0.0;
+	protected SplittableRandom random = new SplittableRandom();
+
+	@Override
+	public MCTSNode run(MCTSNode node) throws Exception {
+		path.clear();
+		pathNodes.clear();
+		path.add(node);
+		pathNodes.add(node);
+		return search(node);
+	}
+
+	@Override
+	public void setRandom(SplittableRandom random) {
+		this.random = random;
+	}
+
+	/**
+	 * Limits the successors of a node that may be explored to
+	 * max(1, ceil(k * n^alpha)), where n is the number of times successors
+	 * have been selected from the node. Further successors are only
+	 * explored as the node is visited more, so nodes with many applicable
+	 * actions are searched deeper rather than wider. A coefficient of 0
+	 * explores every successor before any is revisited.
+	 * @param coefficient k
+	 * @param exponent alpha, between 0 and 1
+	 */
+	public void setProgressiveWidening(double coefficient, double exponent) {
+		if (coefficient < 0.0) {
+			throw new IllegalArgumentException("Widening coefficient must not be negative");
+		}
+		if ((exponent < 0.0) || (exponent > 1.0)) {
+			throw new IllegalArgumentException("Widening exponent must be between 0 and 1");
+		}
+		this.wideningCoefficient = coefficient;
+		this.wideningExponent = exponent;
+	}
+
+	/**
+	 * The nodes from the start node to the leaf of the last run
+	 */
+	public List<MCTSNode> getPath() {
+		return path;
+	}
+
+	protected abstract MCTSNode search(MCTSNode node);
+
+	/**
+	 * Whether the node is already on the current path, which can only
+	 * happen when nodes are shared between parents
+	 */
+	protected boolean isOnPath(MCTSNode node) {
+		return pathNodes.contains(node);
+	}
+
+	/**
+	 * Adds the node to the path and applies virtual loss to it
+	 */
+	protected MCTSNode descend(MCTSNode node) {
+		node.addVirtualLoss();
+		path.add(node);
+		pathNodes.add(node);
+		return node;
+	}
+
+	/**
+	 * Finds the successors of the node that have never been selected from
+	 * it. Their slots can then be read with {@link #getUnexplored(int)}.
+	 * Under progressive widening none are returned once the node has
+	 * explored as many successors as its visits allow, so the policy selects
+	 * among those already explored.
+	 * @return the number of unexplored successors
+	 */
+	protected int getUnexploredSuccessors(MCTSNode node) {
+		int successors = node.getSuccessorCount();
+		if (unexplored.length < successors) {
+			unexplored = new int[successors];
+		}
+		int count = 0;
+		long visits = 0;
+		for (int slot = 0; slot < successors; slot++) {
+			int successorVisits = node.getSuccessorVisits(slot);
+			if (successorVisits == 0) {
+				unexplored[count++] = slot;
+			}
+			visits += successorVisits;
+		}
+		if ((wideningCoefficient > 0.0) && (successors - count >= maxExplored(visits))) {
+			return 0;
+		}
+		return count;
+	}
+
+	private long maxExplored(long visits) {
+		return Math.max(1, (long) Math.ceil(wideningCoefficient * Math.pow(visits, wideningExponent)));
+	}
+
+	protected int getUnexplored(int index) {
+		return unexplored[index];
+	}
+}
@@ -1,56 +1,50 @@
 package org.cei.planner.policy;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
-
 import org.cei.planner.data.MCTSNode;
 import org.cei.planner.util.UCTSelectionHelper;
 
-public class UCTPolicy implements IPolicy {
+public class UCTPolicy extends TreeSearchPolicy {
 
-	private static final Random RAND = new Random(System.nanoTime());
-	 
-	private UCTSelectionHelper uct = new UCTSelectionHelper();
-	private MCTSNode initialNode = null; 
+	private UCTSelectionHelper uct = null;
 	
-	public UCTPolicy(MCTSNode node) {
-		this.initialNode = node;
+	public UCTPolicy() {
+		this.uct = new UCTSelectionHelper();
 	}
 	
-	@Override
-	public MCTSNode call() throws Exception {
-		return search(initialNode);
+	public UCTPolicy(double explorationConstant) {
+		this.uct = new UCTSelectionHelper(explorationConstant);
 	}
 	
-	private MCTSNode search(MCTSNode node) {
+	@Override
+	protected MCTSNode search(MCTSNode node) {
 		//increment node visit count n(s)
 		node.visited();
-		Map<MCTSNode, Integer> successors = node.getSuccessors();
-		List<MCTSNode> unexplored = getUnexploredSuccessors(successors);
+		int unexplored = getUnexploredSuccessors(node);
 		// If there are unexplored add them to the tree
-		if (!unexplored.isEmpty()) {
-			MCTSNode selectedNode = unexplored.get(RAND.nextInt(unexplored.size()));
+		if (unexplored > 0) {
+			int slot = getUnexplored(random.nextInt(unexplored));
+			MCTSNode selectedNode = node.getSuccessor(slot);
+			// A transposition back onto the path ends the descent unvisited
+			if (isOnPath(selectedNode)) {
+				return node;
+			}
 			//Increment action visit count n(s,a)
-			node.visited(selectedNode);
-			return selectedNode;
+			node.visited(slot);
+			return descend(selectedNode);
 		}
 		
-		MCTSNode selectedNode = uct.select(node);
-		//Increment action visit count n(s,a)
-		node.visited(selectedNode);
-		return search(selectedNode);
-	}
-
-	private List<MCTSNode> getUnexploredSuccessors(
-			Map<MCTSNode, Integer> successors) {
-		List<MCTSNode> unexplored = new ArrayList<MCTSNode>();
-		for (MCTSNode node : successors.keySet()) {
-			if (successors.get(node) == 0) {
-				unexplored.add(node);
-			}
+		int slot = uct.select(node);
+		// A dead end is a leaf
+		if (slot < 0) {
+			return node;
 		}
-		return unexplored;
+		MCTSNode selectedNode = node.getSuccessor(slot);
+		// A transposition back onto the path ends the descent unvisited
+		if (isOnPath(selectedNode)) {
+			return node;
+		}
+		//Increment action visit count n(s,a)
+		node.visited(slot);
+		return search(descend(selectedNode));
 	}
 }
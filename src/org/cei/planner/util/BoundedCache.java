@@ -0,0 +1,131 @@
+package org.cei.planner.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread safe map holding at most a fixed number of entries. Entries are
+ * spread over independently locked stripes, each of which evicts its own
+ * entries once full, so the bound and the eviction order are per stripe.
+ */
+public class BoundedCache<K, V> {
+
+	private static final int MAX_STRIPES = 16;
+	private static final int MIN_STRIPE_CAPACITY = 64;
+
+	private Stripe<K, V>[] stripes = null;
+	private int capacity = 0;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BoundedCache(int capacity, EvictionPolicyEnum evictionPolicy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+		this.capacity = capacity;
+		int numStripes = 1;
+		while ((numStripes < MAX_STRIPES)
+				&& (capacity / (numStripes * 2) >= MIN_STRIPE_CAPACITY)) {
+			numStripes *= 2;
+		}
+		int stripeCapacity = (capacity + numStripes - 1) / numStripes;
+		this.stripes = new Stripe[numStripes];
+		for (int i = 0; i < numStripes; i++) {
+			stripes[i] = new Stripe<K, V>(stripeCapacity,
+					evictionPolicy == EvictionPolicyEnum.LRU);
+		}
+	}
+
+	public V get(K key) {
+		Stripe<K, V> stripe = getStripe(key);
+		synchronized (stripe) {
+			return stripe.get(key);
+		}
+	}
+
+	public void put(K key, V value) {
+		Stripe<K, V> stripe = getStripe(key);
+		synchronized (stripe) {
+			stripe.put(key, value);
+		}
+	}
+
+	/**
+	 * Adds the value unless the key is already present
+	 * @return the value now held for the key
+	 */
+	public V putIfAbsent(K key, V value) {
+		Stripe<K, V> stripe = getStripe(key);
+		synchronized (stripe) {
+			V existing = stripe.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			stripe.put(key, value);
+			return value;
+		}
+	}
+
+	public void remove(K key) {
+		Stripe<K, V> stripe = getStripe(key);
+		synchronized (stripe) {
+			stripe.remove(key);
+		}
+	}
+
+	/**
+	 * Removes the key only while it is held for the value
+	 */
+	public void remove(K key, V value) {
+		Stripe<K, V> stripe = getStripe(key);
+		synchronized (stripe) {
+			if (stripe.get(key) == value) {
+				stripe.remove(key);
+			}
+		}
+	}
+
+	public void clear() {
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private Stripe<K, V> getStripe(Object key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return stripes[hash & (stripes.length - 1)];
+	}
+
+	private static class Stripe<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private int capacity = 0;
+
+		public Stripe(int capacity, boolean accessOrder) {
+			super(16, 0.75f, accessOrder);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > capacity;
+		}
+	}
+}
@@ -0,0 +1,6 @@
+package org.cei.planner.util;
+
+public enum EvictionPolicyEnum {
+	LRU, // Evict the least recently used entry
+	FIFO // Evict the oldest entry
+}
@@ -0,0 +1,6 @@
+package org.cei.planner.util;
+
+public enum NodeEvictionPolicyEnum {
+	LRU, // Evict the subtrees least recently passed through
+	LEAST_VISITED // Evict the subtrees with the fewest visits
+}
@@ -1,19 +1,23 @@
 package org.cei.planner.util;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import org.cei.planner.data.MCTSNode;
 
+/**
+ * Samples nodes with probability proportional to exp(value / temperature).
+ * Probabilities are normalised with log-sum-exp, so values of any scale
+ * are sampled correctly, and a selection makes two passes over the nodes
+ * without allocating. A helper draws from its own source, so it must not
+ * be shared between threads.
+ */
 public class SoftmaxSelectionHelper {
 
 	private static final double DEFAULT_TEMPERATURE = 0.01;
-	private static final Random RAND = new Random(System.nanoTime());
 
 	private double temperature = 0.0;
+	private SplittableRandom random = new SplittableRandom();
 
 	public SoftmaxSelectionHelper () {
 		this.temperature = DEFAULT_TEMPERATURE;
@@ -23,93 +27,95 @@ public class SoftmaxSelectionHelper {
 		this.temperature = temperature;
 	}
 
-	public MCTSNode softmaxValueSelection(Collection<MCTSNode> nodes) {
-		double totalValue = getTotalValue(nodes);
-		List<BanditArm> arms = getArms(nodes, totalValue, false);
-		return select(arms);
-	}
-	
-	public MCTSNode softmaxQValueSelection(Collection<MCTSNode> nodes) {
-		double totalQValue = getTotalQValue(nodes);
-		List<BanditArm> arms = getArms(nodes, totalQValue, true);
-		return select(arms);
+	public void setRandom(SplittableRandom random) {
+		this.random = random;
 	}
 
-	private double getTotalQValue(Collection<MCTSNode> nodes) {
-		double totalQ = 0.0;
-		for (MCTSNode node : nodes) {
-			totalQ += Math.exp(node.getQValue() / temperature);
-		}
-		return totalQ;
+	/**
+	 * Selects among the successors that have been explored from the node
+	 * by their value
+	 * @return the slot of the selected successor, or -1 if none has been
+	 *         explored
+	 */
+	public int softmaxValueSelection(MCTSNode node) {
+		return select(null, node, false);
 	}
 
-	private double getTotalValue(Collection<MCTSNode> nodes) {
-		double totalValue = 0.0;
-		for (MCTSNode node : nodes) {
-			totalValue += Math.exp(node.getValue() / temperature);
-		}
-		return totalValue;
+	public MCTSNode softmaxValueSelection(List<MCTSNode> nodes) {
+		int index = select(nodes, null, false);
+		return (index < 0) ? null : nodes.get(index);
 	}
 	
-	private MCTSNode select(List<BanditArm> arms) {
-		Collections.sort(arms);
-		double selection = RAND.nextDouble();
-		for (BanditArm arm : arms) {
-			selection -= arm.getProbability();
-			if (selection <= 0) {
-				return arm.getNode();
-			}
-		}
-		return null;
+	public MCTSNode softmaxQValueSelection(List<MCTSNode> nodes) {
+		int index = select(nodes, null, true);
+		return (index < 0) ? null : nodes.get(index);
 	}
 
-	private List<BanditArm> getArms(Collection<MCTSNode> nodes,
-			double totalValue, boolean useQValue) {
-		List<BanditArm> arms = new ArrayList<BanditArm>();
-		for (MCTSNode node : nodes) {
-			//Determine which value to use
-			double value = node.getValue();
-			if (useQValue) {
-				value = node.getQValue();
+	/**
+	 * Samples from the nodes, or from the successors of the parent when no
+	 * nodes are given. The first pass finds the largest exponent and the
+	 * total weight relative to it; the second walks the weights to the
+	 * sampled point.
+	 * @return the index of the selected node, or -1 if there are none
+	 */
+	private int select(List<MCTSNode> nodes, MCTSNode parent, boolean useQValue) {
+		int size = (nodes == null) ? parent.getSuccessorCount() : nodes.size();
+		int last = -1;
+		double maxExponent = Double.NEGATIVE_INFINITY;
+		double totalWeight = 0.0;
+		for (int i = 0; i < size; i++) {
+			if (!isCandidate(parent, i)) {
+				continue;
+			}
+			last = i;
+			double exponent = getExponent(getNode(nodes, parent, i), useQValue);
+			if (exponent > maxExponent) {
+				// Rescale the weights summed so far to the new maximum
+				totalWeight = (totalWeight * Math.exp(maxExponent - exponent)) + 1.0;
+				maxExponent = exponent;
+			} else {
+				totalWeight += Math.exp(exponent - maxExponent);
 			}
-			//normalise value
-			double normalisedProbability = Math.exp(value
-					/ temperature)
-					/ totalValue;
-			//Create arm
-			BanditArm arm = new BanditArm(normalisedProbability, node);
-			arms.add(arm);
 		}
-		return arms;
+		if (last < 0) {
+			return -1;
+		}
+		double selection = random.nextDouble() * totalWeight;
+		for (int i = 0; i < size; i++) {
+			if (!isCandidate(parent, i)) {
+				continue;
+			}
+			selection -= Math.exp(getExponent(getNode(nodes, parent, i), useQValue) - maxExponent);
+			if (selection <= 0) {
+				return i;
+			}
+		}
+		// Rounding, or values updated by other workers since the first pass
+		return last;
 	}
-}
-
-class BanditArm implements Comparable<BanditArm> {
 
-	private double probability = 0.0;
-	private MCTSNode node = null;
-
-	public BanditArm(double probability, MCTSNode node) {
-		super();
-		this.probability = probability;
-		this.node = node;
+	/**
+	 * Successors of the parent held back by progressive widening are not
+	 * candidates. Every node of a given list is.
+	 */
+	private boolean isCandidate(MCTSNode parent, int index) {
+		return (parent == null) || (parent.getSuccessorVisits(index) > 0);
 	}
 
-	public double getProbability() {
-		return probability;
+	private MCTSNode getNode(List<MCTSNode> nodes, MCTSNode parent, int index) {
+		return (nodes == null) ? parent.getSuccessor(index) : nodes.get(index);
 	}
 
-	public MCTSNode getNode() {
-		return node;
+	private double getExponent(MCTSNode node, boolean useQValue) {
+		//Determine which value to use
+		double value = useQValue ? node.getQValue() : getSelectionValue(node);
+		return value / temperature;
 	}
-
-	@Override
-	public int compareTo(BanditArm other) {
-		if (probability > other.probability) {
-			return -1;
-		} else if (probability < other.probability) {
-			return 1;
-		}
-		return 0;
+	
+	/**
+	 * Value of the node less one for each simulation in flight below it
+	 */
+	private double getSelectionValue(MCTSNode node) {
+		return node.getValue() - node.getVirtualLoss();
 	}
 }
@@ -1,7 +1,5 @@
 package org.cei.planner.util;
 
-import java.util.Map;
-
 import org.cei.planner.data.MCTSNode;
 
 public class UCTSelectionHelper {
@@ -18,22 +16,30 @@ public class UCTSelectionHelper {
 		this.explorationConstant = explorationConstant;
 	}
 
-	public MCTSNode select(MCTSNode node) {
-		Map<MCTSNode, Integer> successors = node.getSuccessors();
-		Map<MCTSNode, Double> successor_QValues = node.getSuccessorQValues();
+	/**
+	 * Selects among the successors that have been explored from the node
+	 * @return the slot of the selected successor, or -1 if none has been
+	 *         explored
+	 */
+	public int select(MCTSNode node) {
+		int successors = node.getSuccessorCount();
+		int nodeVisits = node.getVisits();
 		// determine Q-values
 		double bestQValue = -Double.MAX_VALUE;
-		MCTSNode bestSuccessor = null;
-		for (MCTSNode successor : successors.keySet()) {
-			double qValue = successor_QValues.get(successor);
-			double successorVisits = successors.get(successor);
-			int nodeVisits = node.getVisits();
-			qValue = qValue
-					+ (explorationConstant * Math.sqrt(Math.log(nodeVisits)
-							/ successorVisits));
-			successor_QValues.put(successor, Double.valueOf(qValue));
-			if ((bestSuccessor == null) || (qValue > bestQValue)) {
-				bestSuccessor = successor;
+		int bestSuccessor = -1;
+		for (int slot = 0; slot < successors; slot++) {
+			double successorVisits = node.getSuccessorVisits(slot);
+			// Successors held back by progressive widening are not candidates
+			if (successorVisits == 0) {
+				continue;
+			}
+			// Added in one step so that concurrent workers each add theirs
+			double qValue = node.addSuccessorQValue(slot, explorationConstant
+					* Math.sqrt(Math.log(nodeVisits) / successorVisits));
+			// Simulations in flight below the successor count as losses
+			qValue -= node.getSuccessor(slot).getVirtualLoss();
+			if ((bestSuccessor == -1) || (qValue > bestQValue)) {
+				bestSuccessor = slot;
 				bestQValue = qValue;
 			}
 		}
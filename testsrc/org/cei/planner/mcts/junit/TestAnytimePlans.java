@@ -0,0 +1,86 @@
+package org.cei.planner.mcts.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javaff.data.Action;
+import javaff.data.GroundProblem;
+import javaff.data.Plan;
+import javaff.parser.PDDL21parser;
+import javaff.planning.State;
+
+import org.cei.planner.AnytimePlans;
+import org.junit.Test;
+
+public class TestAnytimePlans {
+	private static final String DRIVER_LOG_PATH = "./problems/driverlog/";
+
+	private static final String DOMAIN_FILE = "domain.pddl";
+
+	@Test
+	public void testLowerCostReplacesBest() {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					GroundProblem ground = PDDL21parser.parseFiles(domainFile, problemFile).ground();
+					State initialState = ground.getSTRIPSInitialState();
+					List<Action> actions = new ArrayList<Action>(initialState.getActions());
+					State first = initialState.apply(actions.get(0));
+					Plan plan = first.getSolution();
+					Plan sameLength = initialState.apply(actions.get(1)).getSolution();
+					Plan longer = first.apply(new ArrayList<Action>(first.getActions()).get(0)).getSolution();
+
+					AnytimePlans plans = new AnytimePlans(null);
+					assertTrue(plans.offer(plan, 10.0));
+					// Equal cost and length is no improvement
+					assertFalse(plans.offer(sameLength, 10.0));
+					assertSame(plan, plans.getBest());
+					assertTrue(plans.offer(sameLength, 5.0));
+					assertSame(sameLength, plans.getBest());
+					assertEquals(5.0, plans.getBestCost(), 0.0);
+					// Under a metric a longer plan replaces the best if cheaper
+					assertFalse(plans.offer(longer, 6.0));
+					assertTrue(plans.offer(longer, 4.0));
+					assertSame(longer, plans.getBest());
+					assertEquals(2, plans.getBestLength());
+					break;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testShorterReplacesBestByLength() {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					GroundProblem ground = PDDL21parser.parseFiles(domainFile, problemFile).ground();
+					State initialState = ground.getSTRIPSInitialState();
+					State first = initialState.apply(new ArrayList<Action>(initialState.getActions()).get(0));
+					Plan shorter = first.getSolution();
+					Plan longer = first.apply(new ArrayList<Action>(first.getActions()).get(0)).getSolution();
+
+					AnytimePlans plans = new AnytimePlans(null);
+					assertTrue(plans.offer(longer));
+					assertTrue(plans.isRuledOut(2));
+					assertFalse(plans.offer(longer));
+					assertTrue(plans.offer(shorter));
+					assertSame(shorter, plans.getBest());
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package org.cei.planner.mcts.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+
+import javaff.data.GroundProblem;
+import javaff.data.UngroundProblem;
+import javaff.parser.PDDL21parser;
+import javaff.planning.State;
+
+import org.cei.planner.data.BitState;
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.ProblemCache;
+import org.junit.Test;
+
+public class TestCompiledProblem {
+	private static final String DRIVER_LOG_PATH = "./problems/driverlog/";
+
+	private static final String DOMAIN_FILE = "domain.pddl";
+	private static final int STEPS = 50;
+	
+	@Test
+	public void testCompiledMatchesJavaFF() {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					UngroundProblem unground = PDDL21parser.parseFiles(domainFile, problemFile);
+					GroundProblem ground = unground.ground();
+					CompiledProblem compiled = new CompiledProblem(ground);
+					State state = ground.getSTRIPSInitialState();
+					BitState bitState = compiled.getInitialState();
+					int[] applicable = new int[compiled.getNumActions()];
+					// Follow the first applicable action in both representations
+					for (int i = 0; i < STEPS; i++) {
+						int count = compiled.getApplicableActions(bitState, applicable);
+						assertEquals(state.getActions().size(), count);
+						assertEquals(state.goalReached(), compiled.isGoal(bitState));
+						if (count == 0) {
+							break;
+						}
+						state = state.apply(compiled.getAction(applicable[0]));
+						bitState = compiled.apply(bitState, applicable[0]);
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testProblemCache() throws Exception {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		File cacheDir = new File("./output/problem-cache/");
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					ProblemCache cache = new ProblemCache(ProblemCache.DEFAULT_CAPACITY, cacheDir);
+					GroundProblem ground = cache.getGroundProblem(domainFile, problemFile);
+					assertSame(ground, cache.getGroundProblem(domainFile, problemFile));
+					CompiledProblem compiled = cache.getCompiledProblem(ground);
+					assertSame(compiled, cache.getCompiledProblem(ground));
+					// A new cache maps in the compiled problem the first wrote
+					ProblemCache restarted = new ProblemCache(ProblemCache.DEFAULT_CAPACITY, cacheDir);
+					GroundProblem reground = restarted.getGroundProblem(domainFile, problemFile);
+					CompiledProblem read = restarted.getCompiledProblem(reground);
+					assertNotNull(read);
+					assertEquals(compiled.getNumActions(), read.getNumActions());
+					assertEquals(compiled.getNumPropositions(), read.getNumPropositions());
+					assertArrayEquals(compiled.getInitialState().getBits(), read.getInitialState().getBits());
+					break;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testRestartWithoutParsing() throws Exception {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		File cacheDir = new File("./output/problem-cache-restart/");
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					ProblemCache cache = new ProblemCache(ProblemCache.DEFAULT_CAPACITY, cacheDir);
+					GroundProblem ground = cache.getGroundProblem(domainFile, problemFile);
+					CompiledProblem compiled = cache.getCompiledProblem(ground);
+					// A new cache rebuilds the problem the first wrote
+					ProblemCache restarted = new ProblemCache(ProblemCache.DEFAULT_CAPACITY, cacheDir);
+					GroundProblem rebuilt = restarted.getGroundProblem(domainFile, problemFile);
+					assertEquals(0, restarted.getProblemsParsed());
+					assertEquals(ground.actions.size(), rebuilt.actions.size());
+					assertEquals(ground.initial.size(), rebuilt.initial.size());
+					CompiledProblem read = restarted.getCompiledProblem(rebuilt);
+					assertEquals(compiled.getNumPropositions(), read.getNumPropositions());
+					assertArrayEquals(compiled.getInitialState().getBits(), read.getInitialState().getBits());
+					// The rebuilt problem is searched like the parsed one
+					State state = ground.getSTRIPSInitialState();
+					State rebuiltState = rebuilt.getSTRIPSInitialState();
+					assertEquals(state.getHValue(), rebuiltState.getHValue());
+					assertEquals(state.getActions().size(), rebuiltState.getActions().size());
+					break;
+				}
+			}
+		}
+	}
+}
@@ -1,7 +1,15 @@
 package org.cei.planner.mcts.junit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 import java.io.File;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -12,14 +20,26 @@ import java.util.logging.Level;
 import java.util.logging.SimpleFormatter;
 
 import javaff.JavaFF;
+import javaff.data.Action;
+import javaff.data.GroundProblem;
 import javaff.data.Plan;
+import javaff.parser.PDDL21parser;
+import javaff.planning.State;
 
 import org.cei.planner.IPlanner;
 import org.cei.planner.PDDLPlanner;
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.HeuristicEvaluator;
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.SearchContext;
+import org.cei.planner.data.StateValuePolicyEnum;
 import org.cei.planner.executor.ExecutorFactory;
 import org.cei.planner.mcrw.MCRWPlanner;
 import org.cei.planner.mcts.MCTSPlanner;
+import org.cei.planner.mcts.ParallelisationEnum;
+import org.cei.planner.policy.PureRandomWalk;
 import org.cei.planner.policy.SoftmaxTreeSearchPolicy;
+import org.cei.planner.policy.UCTPolicy;
 import org.junit.Test;
 
 public class TestMCTS {
@@ -28,6 +48,14 @@ public class TestMCTS {
 	private static final String ROVERS_PATH = "./problems/rovers/";
 
 	private static final String DOMAIN_FILE = "domain.pddl";
+	private static final int WALK_RUNS = 20;
+	private static final long SEED = 42;
+	private static final long ITERATIONS_PER_MOVE = 200;
+	private static final int WORKERS = 4;
+	private static final long ROLLOUT_DEPTH = 50;
+	private static final long TIME_BUDGET = 10 * (long) Math.pow(10, 9);
+	// The share of the budget every move is given once it is spent
+	private static final long MIN_MOVE_TIME = TIME_BUDGET / 100;
 	
 	@Test
 	public void testMCTS() throws Exception {
@@ -94,4 +122,166 @@ public class TestMCTS {
 			}
 		}
 	}
+	
+	@Test
+	public void testMCTSRootParallel() throws Exception {
+		GroundProblem ground = groundProblem();
+		CompiledProblem compiled = new CompiledProblem(ground);
+		SearchContext context = new SearchContext(null, compiled);
+		MCTSNode initialNode = new MCTSNode(ground.getSTRIPSInitialState(), compiled.getInitialState(),
+				StateValuePolicyEnum.H_VALUE, context);
+		List<MCTSNode> roots = new ArrayList<>();
+		roots.add(initialNode);
+		for (int i = 1; i < WORKERS; i++) {
+			roots.add(new MCTSNode(initialNode.getState(), initialNode.getBitState(),
+					StateValuePolicyEnum.H_VALUE, context.newTreeContext()));
+		}
+		SplittableRandom random = new SplittableRandom(SEED);
+		int successors = initialNode.getSuccessorCount();
+		int[] slotVisits = new int[successors];
+		int rootVisits = 0;
+		for (MCTSNode root : roots) {
+			for (int i = 0; i < ITERATIONS_PER_MOVE; i++) {
+				int slot = random.nextInt(successors);
+				root.visited();
+				root.visited(slot);
+				root.getSuccessor(slot).setValue(random.nextDouble());
+				slotVisits[slot]++;
+				rootVisits++;
+			}
+		}
+		MCTSPlanner.mergeRootStatistics(initialNode, roots.subList(1, roots.size()));
+		// The merged root counts every visit of every tree
+		assertEquals(rootVisits, initialNode.getVisits());
+		for (int slot = 0; slot < successors; slot++) {
+			assertEquals(slotVisits[slot], initialNode.getSuccessorVisits(slot));
+		}
+		
+		MCTSPlanner mctsPlanner = new MCTSPlanner(SoftmaxTreeSearchPolicy.class);
+		mctsPlanner.setParallelisation(ParallelisationEnum.ROOT, WORKERS);
+		mctsPlanner.setIterationsPerMove(ITERATIONS_PER_MOVE);
+		mctsPlanner.setRolloutDepth(ROLLOUT_DEPTH);
+		assertReachesGoal(ground, mctsPlanner.solve(ground));
+	}
+	
+	@Test
+	public void testMCTSTreeParallel() throws Exception {
+		GroundProblem ground = groundProblem();
+		MCTSPlanner mctsPlanner = new MCTSPlanner(UCTPolicy.class);
+		mctsPlanner.setParallelisation(ParallelisationEnum.TREE, WORKERS);
+		mctsPlanner.setIterationsPerMove(ITERATIONS_PER_MOVE);
+		mctsPlanner.setRolloutDepth(ROLLOUT_DEPTH);
+		assertReachesGoal(ground, mctsPlanner.solve(ground));
+	}
+	
+	@Test
+	public void testMCTSTimeBudget() throws Exception {
+		GroundProblem ground = groundProblem();
+		MCTSPlanner mctsPlanner = new MCTSPlanner(UCTPolicy.class);
+		mctsPlanner.setTimeBudget(TIME_BUDGET);
+		mctsPlanner.setRolloutDepth(ROLLOUT_DEPTH);
+		long startTime = System.nanoTime();
+		Plan plan = mctsPlanner.solve(ground);
+		long solveTime = System.nanoTime() - startTime;
+		assertReachesGoal(ground, plan);
+		// Moves never run past the budget left, but once it is spent each
+		// further move is still given a minimum share, at most one per step
+		int overruns = Math.max(1, plan.getActions().size());
+		assertTrue(solveTime <= TIME_BUDGET + (overruns * MIN_MOVE_TIME));
+	}
+	
+	@Test
+	public void testMCRWParallelWalks() throws Exception {
+		GroundProblem ground = groundProblem();
+		MCRWPlanner mcrwPlanner = new MCRWPlanner(PureRandomWalk.class);
+		mcrwPlanner.setParallelWalks(WORKERS);
+		mcrwPlanner.setSeed(SEED);
+		assertReachesGoal(ground, mcrwPlanner.solve(ground));
+	}
+	
+	@Test
+	public void testSeededSolvesRepeat() throws Exception {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					GroundProblem ground = PDDL21parser.parseFiles(domainFile, problemFile).ground();
+					Plan[] plans = new Plan[2];
+					for (int i = 0; i < plans.length; i++) {
+						MCTSPlanner mctsPlanner = new MCTSPlanner(UCTPolicy.class);
+						mctsPlanner.setSeed(SEED);
+						mctsPlanner.setIterationsPerMove(ITERATIONS_PER_MOVE);
+						plans[i] = mctsPlanner.solve(ground);
+					}
+					assertEquals(plans[0].getActions(), plans[1].getActions());
+					break;
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testParallelWalksHeuristic() throws Exception {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					GroundProblem ground = PDDL21parser.parseFiles(domainFile, problemFile).ground();
+					for (int parallelWalks : new int[] { 1, 4 }) {
+						SearchContext context = new SearchContext();
+						context.setHeuristicEvaluator(new HeuristicEvaluator(ground, false));
+						MCTSNode initialNode = new MCTSNode(ground.getSTRIPSInitialState(),
+								StateValuePolicyEnum.H_VALUE, context);
+						PureRandomWalk walkPolicy = new PureRandomWalk();
+						walkPolicy.setParallelism(parallelWalks);
+						walkPolicy.setRandom(new SplittableRandom(SEED));
+						for (int i = 0; i < WALK_RUNS; i++) {
+							MCTSNode endNode = walkPolicy.run(initialNode);
+							// The value seen by the walkers, each on a planning graph of
+							// its own, is the value of the state evaluated on its own
+							double hValue = endNode.getState().getHValue().doubleValue();
+							assertEquals(hValue, endNode.getHValue(), 0.0);
+						}
+					}
+					break;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Replays the plan from the initial state, checking each action applies
+	 */
+	private void assertReachesGoal(GroundProblem ground, Plan plan) {
+		assertNotNull(plan);
+		State state = ground.getSTRIPSInitialState();
+		for (Object action : plan.getActions()) {
+			assertTrue(((Action) action).isApplicable(state));
+			state = state.apply((Action) action);
+		}
+		assertTrue(state.goalReached());
+	}
+	
+	/**
+	 * The first driverlog problem, failing rather than passing silently when
+	 * the problems are missing
+	 */
+	private GroundProblem groundProblem() {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File[] directoryListing = new File(DRIVER_LOG_PATH).listFiles();
+		assertNotNull(directoryListing);
+		for (File problemFile : directoryListing) {
+			if (problemFile.getName().endsWith("pfile01")) {
+				return PDDL21parser.parseFiles(domainFile, problemFile).ground();
+			}
+		}
+		fail("No problem ending in pfile01 in " + DRIVER_LOG_PATH);
+		return null;
+	}
 }
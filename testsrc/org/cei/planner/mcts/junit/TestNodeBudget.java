@@ -0,0 +1,221 @@
+package org.cei.planner.mcts.junit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import javaff.data.GroundProblem;
+import javaff.data.UngroundProblem;
+import javaff.parser.PDDL21parser;
+
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.NodeBudget;
+import org.cei.planner.data.SearchContext;
+import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.data.TranspositionTable;
+import org.cei.planner.util.EvictionPolicyEnum;
+import org.cei.planner.util.NodeEvictionPolicyEnum;
+import org.junit.Test;
+
+public class TestNodeBudget {
+	private static final String DRIVER_LOG_PATH = "./problems/driverlog/";
+
+	private static final String DOMAIN_FILE = "domain.pddl";
+	private static final int MAX_NODES = 50;
+	private static final int TABLE_SIZE = 1000;
+	private static final int ITERATIONS = 500;
+	private static final int DEPTH = 6;
+	private static final long SEED = 42;
+
+	@Test
+	public void testEvictionKeepsStatistics() {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					UngroundProblem unground = PDDL21parser.parseFiles(domainFile, problemFile);
+					GroundProblem ground = unground.ground();
+					CompiledProblem compiled = new CompiledProblem(ground);
+					NodeBudget budget = new NodeBudget(MAX_NODES, NodeEvictionPolicyEnum.LRU);
+					SearchContext context = new SearchContext(null, compiled, budget);
+					MCTSNode root = new MCTSNode(ground.getSTRIPSInitialState(), compiled.getInitialState(),
+							StateValuePolicyEnum.H_VALUE, context);
+					SplittableRandom random = new SplittableRandom(SEED);
+					int evictions = 0;
+					for (int i = 0; i < ITERATIONS; i++) {
+						descend(root, budget.tick(), random);
+						if (budget.isExceeded()) {
+							Map<MCTSNode, Statistics> before = snapshot(root);
+							assertTrue(budget.evict(root) > 0);
+							assertTrue(budget.getNodes() <= MAX_NODES);
+							assertTrue(root.countTreeNodes() <= MAX_NODES);
+							assertTrue(root.isExpanded());
+							for (Map.Entry<MCTSNode, Statistics> entry : before.entrySet()) {
+								MCTSNode node = entry.getKey();
+								if (!node.isExpanded()) {
+									// Expanding an evicted node restores its slots
+									// but none of its successors
+									entry.getValue().assertRestored(node);
+								}
+							}
+							evictions++;
+						}
+					}
+					assertTrue(evictions > 0);
+					break;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEvictionReleasesTranspositions() {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File dir = new File(DRIVER_LOG_PATH);
+		File[] directoryListing = dir.listFiles();
+		if (directoryListing != null) {
+			for (File problemFile : directoryListing) {
+				if (problemFile.getName().endsWith("pfile01")) {
+					UngroundProblem unground = PDDL21parser.parseFiles(domainFile, problemFile);
+					GroundProblem ground = unground.ground();
+					CompiledProblem compiled = new CompiledProblem(ground);
+					NodeBudget budget = new NodeBudget(MAX_NODES, NodeEvictionPolicyEnum.LRU);
+					TranspositionTable transpositionTable = new TranspositionTable(TABLE_SIZE,
+							EvictionPolicyEnum.LRU);
+					SearchContext context = new SearchContext(transpositionTable, compiled, budget);
+					MCTSNode root = new MCTSNode(ground.getSTRIPSInitialState(), compiled.getInitialState(),
+							StateValuePolicyEnum.H_VALUE, context);
+					SplittableRandom random = new SplittableRandom(SEED);
+					int evictions = 0;
+					for (int i = 0; i < ITERATIONS; i++) {
+						descend(root, budget.tick(), random);
+						if (budget.isExceeded()) {
+							Set<MCTSNode> before = treeNodes(root);
+							assertTrue(budget.evict(root) > 0);
+							Set<MCTSNode> after = treeNodes(root);
+							// Nodes released from the tree cannot be found again
+							// through the table by a parent expanded again
+							for (MCTSNode node : before) {
+								if (!after.contains(node)) {
+									assertFalse(transpositionTable.get(node.getKey()) == node);
+								}
+							}
+							evictions++;
+						}
+					}
+					assertTrue(evictions > 0);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Descends a random path, recording statistics in every slot taken
+	 */
+	private void descend(MCTSNode root, long tick, SplittableRandom random) {
+		MCTSNode node = root;
+		for (int depth = 0; (depth < DEPTH) && (node.getSuccessorCount() > 0); depth++) {
+			int slot = random.nextInt(node.getSuccessorCount());
+			node.visited(slot);
+			node.setSuccessorQValue(slot, random.nextDouble());
+			node = node.getSuccessor(slot);
+			node.setValue(random.nextDouble());
+			node.touch(tick);
+		}
+	}
+
+	/**
+	 * The slot statistics of every expanded node of the tree
+	 */
+	private Map<MCTSNode, Statistics> snapshot(MCTSNode root) {
+		Map<MCTSNode, Statistics> statistics = new IdentityHashMap<>();
+		List<MCTSNode> open = new ArrayList<>();
+		open.add(root);
+		while (!open.isEmpty()) {
+			MCTSNode node = open.remove(open.size() - 1);
+			if (!node.isExpanded() || statistics.containsKey(node)) {
+				continue;
+			}
+			statistics.put(node, new Statistics(node));
+			for (int slot = 0; slot < node.getSuccessorCount(); slot++) {
+				MCTSNode successor = node.getCreatedSuccessor(slot);
+				if (successor != null) {
+					open.add(successor);
+				}
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Every node created in the tree
+	 */
+	private Set<MCTSNode> treeNodes(MCTSNode root) {
+		Set<MCTSNode> nodes = Collections.newSetFromMap(new IdentityHashMap<MCTSNode, Boolean>());
+		List<MCTSNode> open = new ArrayList<>();
+		open.add(root);
+		nodes.add(root);
+		while (!open.isEmpty()) {
+			MCTSNode node = open.remove(open.size() - 1);
+			if (!node.isExpanded()) {
+				continue;
+			}
+			for (int slot = 0; slot < node.getSuccessorCount(); slot++) {
+				MCTSNode successor = node.getCreatedSuccessor(slot);
+				if ((successor != null) && nodes.add(successor)) {
+					open.add(successor);
+				}
+			}
+		}
+		return nodes;
+	}
+
+	private static class Statistics {
+
+		private int[] visits = null;
+		private double[] qValues = null;
+		private double[] values = null;
+
+		public Statistics(MCTSNode node) {
+			int successors = node.getSuccessorCount();
+			visits = new int[successors];
+			qValues = new double[successors];
+			values = new double[successors];
+			for (int slot = 0; slot < successors; slot++) {
+				visits[slot] = node.getSuccessorVisits(slot);
+				qValues[slot] = node.getSuccessorQValue(slot);
+				MCTSNode successor = node.getCreatedSuccessor(slot);
+				values[slot] = (successor == null) ? Double.NaN : successor.getValue();
+			}
+		}
+
+		public void assertRestored(MCTSNode node) {
+			assertFalse(node.isExpanded());
+			Statistics restored = new Statistics(node);
+			assertTrue(node.isExpanded());
+			assertArrayEquals(visits, restored.visits);
+			assertArrayEquals(qValues, restored.qValues, 0.0);
+			for (int slot = 0; slot < values.length; slot++) {
+				assertNull(node.getCreatedSuccessor(slot));
+				if (!Double.isNaN(values[slot])) {
+					assertEquals(values[slot], node.getSuccessor(slot).getValue(), 0.0);
+				}
+			}
+		}
+	}
+}
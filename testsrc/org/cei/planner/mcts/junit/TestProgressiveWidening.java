@@ -0,0 +1,112 @@
+package org.cei.planner.mcts.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import javaff.data.GroundProblem;
+import javaff.parser.PDDL21parser;
+
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.SearchContext;
+import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.policy.TreeSearchPolicy;
+import org.junit.Test;
+
+public class TestProgressiveWidening {
+	private static final String DRIVER_LOG_PATH = "./problems/driverlog/";
+
+	private static final String DOMAIN_FILE = "domain.pddl";
+	private static final double COEFFICIENT = 1.5;
+	private static final double EXPONENT = 0.5;
+	private static final int VISITS = 500;
+
+	@Test
+	public void testWideningCap() {
+		MCTSNode node = createRoot();
+		int successors = node.getSuccessorCount();
+		assertTrue(successors > 1);
+		WideningPolicy policy = new WideningPolicy();
+		policy.setProgressiveWidening(COEFFICIENT, EXPONENT);
+		int explored = 0;
+		for (int visits = 0; visits < VISITS; visits++) {
+			long cap = Math.max(1, (long) Math.ceil(COEFFICIENT * Math.pow(visits, EXPONENT)));
+			int unexplored = policy.unexplored(node);
+			if (explored >= cap) {
+				assertEquals(0, unexplored);
+			} else {
+				assertEquals(successors - explored, unexplored);
+			}
+			if (unexplored > 0) {
+				node.visited(policy.unexploredSlot(0));
+				explored++;
+			} else {
+				node.visited(0);
+			}
+			// Successors are only explored as the visits allow
+			assertTrue(explored <= cap);
+		}
+		// More successors are explored as the node is visited more
+		assertTrue(explored > 1);
+	}
+
+	@Test
+	public void testNoWideningExploresEverySuccessor() {
+		MCTSNode node = createRoot();
+		int successors = node.getSuccessorCount();
+		WideningPolicy policy = new WideningPolicy();
+		for (int explored = 0; explored < successors; explored++) {
+			assertEquals(successors - explored, policy.unexplored(node));
+			node.visited(policy.unexploredSlot(0));
+		}
+		assertEquals(0, policy.unexplored(node));
+	}
+
+	private MCTSNode createRoot() {
+		GroundProblem ground = groundProblem();
+		CompiledProblem compiled = new CompiledProblem(ground);
+		SearchContext context = new SearchContext(null, compiled);
+		return new MCTSNode(ground.getSTRIPSInitialState(), compiled.getInitialState(),
+				StateValuePolicyEnum.H_VALUE, context);
+	}
+
+	/**
+	 * The first driverlog problem, failing rather than passing silently when
+	 * the problems are missing
+	 */
+	private GroundProblem groundProblem() {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File[] directoryListing = new File(DRIVER_LOG_PATH).listFiles();
+		assertNotNull(directoryListing);
+		for (File problemFile : directoryListing) {
+			if (problemFile.getName().endsWith("pfile01")) {
+				return PDDL21parser.parseFiles(domainFile, problemFile).ground();
+			}
+		}
+		fail("No problem ending in pfile01 in " + DRIVER_LOG_PATH);
+		return null;
+	}
+
+	/**
+	 * Exposes the unexplored successors a tree search policy is offered
+	 */
+	private static class WideningPolicy extends TreeSearchPolicy {
+
+		public int unexplored(MCTSNode node) {
+			return getUnexploredSuccessors(node);
+		}
+
+		public int unexploredSlot(int index) {
+			return getUnexplored(index);
+		}
+
+		@Override
+		protected MCTSNode search(MCTSNode node) {
+			return node;
+		}
+	}
+}
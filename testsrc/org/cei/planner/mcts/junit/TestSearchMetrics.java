@@ -0,0 +1,52 @@
+package org.cei.planner.mcts.junit;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.cei.planner.metrics.SearchMetrics;
+import org.junit.Test;
+
+public class TestSearchMetrics {
+	
+	@Test
+	public void testCounters() {
+		SearchMetrics metrics = new SearchMetrics();
+		metrics.setTreeNodes(1);
+		metrics.expanded(4);
+		metrics.expanded(3);
+		metrics.released(2);
+		metrics.rolloutCompleted(10);
+		metrics.rolloutCompleted(20);
+		metrics.reachedDepth(3);
+		metrics.reachedDepth(2);
+		assertEquals(2, metrics.getExpansions());
+		assertEquals(6, metrics.getNodesAlive());
+		assertEquals(2, metrics.getRollouts());
+		assertEquals(15.0, metrics.getAverageRolloutDepth(), 0.0);
+		assertEquals(3, metrics.getTreeDepth());
+		metrics.heuristicEvaluated();
+		metrics.heuristicCacheHit();
+		metrics.heuristicCacheHit();
+		metrics.heuristicCacheHit();
+		assertEquals(0.75, metrics.getHeuristicCacheHitRate(), 0.0);
+		metrics.reset();
+		assertEquals(0, metrics.getRollouts());
+		assertEquals(0.0, metrics.getAverageRolloutDepth(), 0.0);
+	}
+	
+	@Test
+	public void testJMX() throws Exception {
+		SearchMetrics metrics = new SearchMetrics();
+		metrics.rolloutCompleted(5);
+		metrics.register("TestSearchMetrics");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("org.cei.planner:type=SearchMetrics,name=\"TestSearchMetrics\"");
+		assertEquals(Long.valueOf(1), server.getAttribute(name, "Rollouts"));
+		metrics.unregister();
+		assertEquals(false, server.isRegistered(name));
+	}
+}
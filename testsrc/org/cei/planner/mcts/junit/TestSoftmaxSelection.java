@@ -0,0 +1,59 @@
+package org.cei.planner.mcts.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.util.SoftmaxSelectionHelper;
+import org.junit.Test;
+
+public class TestSoftmaxSelection {
+
+	private static final long SEED = 42;
+	private static final int SELECTIONS = 10000;
+
+	@Test
+	public void testValuesBeyondExpRange() {
+		// At the default temperature these values overflow Math.exp
+		List<MCTSNode> nodes = createNodes(1000.0, 999.99);
+		SoftmaxSelectionHelper softmax = new SoftmaxSelectionHelper();
+		softmax.setRandom(new SplittableRandom(SEED));
+		int first = 0;
+		for (int i = 0; i < SELECTIONS; i++) {
+			MCTSNode selected = softmax.softmaxValueSelection(nodes);
+			assertNotNull(selected);
+			if (selected == nodes.get(0)) {
+				first++;
+			}
+		}
+		// Exponents differ by 1, so the first is chosen e / (e + 1) of the time
+		double expected = Math.E / (Math.E + 1.0);
+		assertEquals(expected, (double) first / SELECTIONS, 0.02);
+	}
+
+	@Test
+	public void testDominantValue() {
+		List<MCTSNode> nodes = createNodes(-1.0e6, 1.0e6, 0.0);
+		SoftmaxSelectionHelper softmax = new SoftmaxSelectionHelper();
+		softmax.setRandom(new SplittableRandom(SEED));
+		for (int i = 0; i < SELECTIONS; i++) {
+			assertSame(nodes.get(1), softmax.softmaxValueSelection(nodes));
+		}
+	}
+
+	private List<MCTSNode> createNodes(double... values) {
+		List<MCTSNode> nodes = new ArrayList<>();
+		for (double value : values) {
+			MCTSNode node = new MCTSNode(null, StateValuePolicyEnum.WIN_LOSS_STATE);
+			node.setValue(value);
+			nodes.add(node);
+		}
+		return nodes;
+	}
+}
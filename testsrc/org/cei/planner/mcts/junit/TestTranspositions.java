@@ -0,0 +1,208 @@
+package org.cei.planner.mcts.junit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import javaff.data.GroundProblem;
+import javaff.parser.PDDL21parser;
+
+import org.cei.planner.data.CompiledProblem;
+import org.cei.planner.data.MCTSNode;
+import org.cei.planner.data.NodeBudget;
+import org.cei.planner.data.SearchContext;
+import org.cei.planner.data.StateValuePolicyEnum;
+import org.cei.planner.data.TranspositionTable;
+import org.cei.planner.mcts.MCTSPlanner;
+import org.cei.planner.util.EvictionPolicyEnum;
+import org.cei.planner.util.NodeEvictionPolicyEnum;
+import org.junit.Test;
+
+public class TestTranspositions {
+	private static final String DRIVER_LOG_PATH = "./problems/driverlog/";
+
+	private static final String DOMAIN_FILE = "domain.pddl";
+	private static final int MAX_NODES = 100000;
+	// Large enough to hold every node the iterations can create
+	private static final int TABLE_SIZE = 1000;
+	private static final int ITERATIONS = 100;
+	private static final int DEPTH = 6;
+	private static final long SEED = 42;
+
+	@Test
+	public void testTransposedStatesShareStatistics() {
+		GroundProblem ground = groundProblem();
+		CompiledProblem compiled = new CompiledProblem(ground);
+		TranspositionTable transpositionTable = new TranspositionTable(TABLE_SIZE, EvictionPolicyEnum.LRU);
+		SearchContext context = new SearchContext(transpositionTable, compiled);
+		MCTSNode root = new MCTSNode(ground.getSTRIPSInitialState(), compiled.getInitialState(),
+				StateValuePolicyEnum.H_VALUE, context);
+		// Independent actions taken in either order reach the same state
+		Map<Object, MCTSNode> reached = new HashMap<>();
+		Map<Object, MCTSNode> reachedThrough = new HashMap<>();
+		int transpositions = 0;
+		for (int slot = 0; slot < root.getSuccessorCount(); slot++) {
+			MCTSNode child = root.getSuccessor(slot);
+			for (int childSlot = 0; childSlot < child.getSuccessorCount(); childSlot++) {
+				MCTSNode grandchild = child.getSuccessor(childSlot);
+				MCTSNode first = reached.get(grandchild.getKey());
+				if (first == null) {
+					reached.put(grandchild.getKey(), grandchild);
+					reachedThrough.put(grandchild.getKey(), child);
+				} else if (reachedThrough.get(grandchild.getKey()) != child) {
+					assertSame(first, grandchild);
+					transpositions++;
+				}
+			}
+		}
+		assertTrue(transpositions > 0);
+
+		// Statistics recorded through one path are seen through the other
+		for (MCTSNode node : reached.values()) {
+			node.setValue(0.0);
+		}
+		SplittableRandom random = new SplittableRandom(SEED);
+		for (int slot = 0; slot < root.getSuccessorCount(); slot++) {
+			MCTSNode child = root.getSuccessor(slot);
+			for (int childSlot = 0; childSlot < child.getSuccessorCount(); childSlot++) {
+				MCTSNode grandchild = child.getSuccessor(childSlot);
+				double value = random.nextDouble();
+				grandchild.setValue(value);
+				grandchild.visited();
+				assertEquals(value, reached.get(grandchild.getKey()).getValue(), 0.0);
+			}
+		}
+		int visits = 0;
+		for (MCTSNode node : reached.values()) {
+			visits += node.getVisits();
+		}
+		// Every visit landed on the one node held for its state
+		int paths = 0;
+		for (int slot = 0; slot < root.getSuccessorCount(); slot++) {
+			paths += root.getSuccessor(slot).getSuccessorCount();
+		}
+		assertEquals(paths, visits);
+	}
+
+	@Test
+	public void testPromoteReleasesSiblings() {
+		GroundProblem ground = groundProblem();
+		CompiledProblem compiled = new CompiledProblem(ground);
+		NodeBudget budget = new NodeBudget(MAX_NODES, NodeEvictionPolicyEnum.LRU);
+		TranspositionTable transpositionTable = new TranspositionTable(TABLE_SIZE, EvictionPolicyEnum.LRU);
+		SearchContext context = new SearchContext(transpositionTable, compiled, budget);
+		MCTSNode root = new MCTSNode(ground.getSTRIPSInitialState(), compiled.getInitialState(),
+				StateValuePolicyEnum.H_VALUE, context);
+		SplittableRandom random = new SplittableRandom(SEED);
+		for (int i = 0; i < ITERATIONS; i++) {
+			descend(root, random);
+		}
+		MCTSNode successor = mostVisited(root);
+		Set<MCTSNode> before = treeNodes(root);
+		Set<MCTSNode> kept = treeNodes(successor);
+		assertTrue(kept.size() > 1);
+		assertTrue(kept.size() < before.size());
+		int[] visits = new int[successor.getSuccessorCount()];
+		for (int slot = 0; slot < visits.length; slot++) {
+			visits[slot] = successor.getSuccessorVisits(slot);
+		}
+
+		int treeNodes = MCTSPlanner.promote(root, successor);
+		assertEquals(kept.size(), treeNodes);
+		assertEquals(treeNodes, budget.getNodes());
+		assertNull(successor.getParent());
+		// The siblings are no longer reachable from the old root
+		assertFalse(root.isExpanded());
+		// The subtree and its statistics are kept
+		assertEquals(kept, treeNodes(successor));
+		for (int slot = 0; slot < visits.length; slot++) {
+			assertEquals(visits[slot], successor.getSuccessorVisits(slot));
+		}
+		// The table holds the subtree and nothing released with the siblings
+		assertEquals(kept.size(), transpositionTable.size());
+		for (MCTSNode node : before) {
+			if (kept.contains(node)) {
+				assertSame(node, transpositionTable.get(node.getKey()));
+			} else {
+				assertFalse(transpositionTable.get(node.getKey()) == node);
+			}
+		}
+	}
+
+	/**
+	 * Descends a random path, recording a visit in every slot taken
+	 */
+	private void descend(MCTSNode root, SplittableRandom random) {
+		MCTSNode node = root;
+		for (int depth = 0; (depth < DEPTH) && (node.getSuccessorCount() > 0); depth++) {
+			int slot = random.nextInt(node.getSuccessorCount());
+			node.visited(slot);
+			node = node.getSuccessor(slot);
+			node.setValue(random.nextDouble());
+		}
+	}
+
+	private MCTSNode mostVisited(MCTSNode node) {
+		int best = 0;
+		for (int slot = 1; slot < node.getSuccessorCount(); slot++) {
+			if (node.getSuccessorVisits(slot) > node.getSuccessorVisits(best)) {
+				best = slot;
+			}
+		}
+		return node.getSuccessor(best);
+	}
+
+	/**
+	 * Every node created in the tree
+	 */
+	private Set<MCTSNode> treeNodes(MCTSNode root) {
+		Set<MCTSNode> nodes = Collections.newSetFromMap(new IdentityHashMap<MCTSNode, Boolean>());
+		List<MCTSNode> open = new ArrayList<>();
+		open.add(root);
+		nodes.add(root);
+		while (!open.isEmpty()) {
+			MCTSNode node = open.remove(open.size() - 1);
+			if (!node.isExpanded()) {
+				continue;
+			}
+			for (int slot = 0; slot < node.getSuccessorCount(); slot++) {
+				MCTSNode successor = node.getCreatedSuccessor(slot);
+				if ((successor != null) && nodes.add(successor)) {
+					open.add(successor);
+				}
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * The first driverlog problem, failing rather than passing silently when
+	 * the problems are missing
+	 */
+	private GroundProblem groundProblem() {
+		File domainFile = new File(DRIVER_LOG_PATH + DOMAIN_FILE);
+		File[] directoryListing = new File(DRIVER_LOG_PATH).listFiles();
+		assertNotNull(directoryListing);
+		for (File problemFile : directoryListing) {
+			if (problemFile.getName().endsWith("pfile01")) {
+				return PDDL21parser.parseFiles(domainFile, problemFile).ground();
+			}
+		}
+		fail("No problem ending in pfile01 in " + DRIVER_LOG_PATH);
+		return null;
+	}
+}